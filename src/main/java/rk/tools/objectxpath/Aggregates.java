@@ -0,0 +1,88 @@
+package rk.tools.objectxpath;
+
+import rk.tools.objectxpath.xpath.NodeRelationship;
+import rk.tools.objectxpath.xpath.NodeWithPredicate;
+import rk.tools.objectxpath.xpath.PredicateExpression;
+import rk.tools.objectxpath.xpath.XPathNode;
+import rk.tools.objectxpath.xpath.XPathNodeType;
+
+import java.util.Iterator;
+
+/**
+ * Computes {@code count()} and {@code sum()} of query matches without collecting them.
+ * <p>
+ * When the last XPath node selects elements of a primitive array (e.g. {@code /readings/item}
+ * or {@code /readings/item[. > 0]}) the array is aggregated directly,
+ * neither nodes nor wrapper objects are created for its elements.
+ */
+class Aggregates {
+    private final boolean sum;
+    /**
+     * Sum of values ({@code NaN} if some value is not a number) or number of matches.
+     */
+    double result;
+    /**
+     * Number of aggregated matches.
+     */
+    long matches;
+
+    /**
+     * @param sum {@code true} to sum numeric values of matches, {@code false} to count them
+     */
+    Aggregates(boolean sum) {
+        this.sum = sum;
+    }
+
+    /**
+     * @param contexts  nodes matched by all XPath nodes except the last one
+     * @param xPathNode the last XPath node
+     * @return this aggregate
+     */
+    Aggregates aggregate(Iterator<Node> contexts, XPathNode xPathNode) {
+        while (contexts.hasNext()) {
+            Node context = contexts.next();
+            if (selectsPrimitiveElements(context, xPathNode)) {
+                aggregateElements(context, xPathNode);
+                continue;
+            }
+            Iterator<Node> nodes = MatchIterator.select(context, xPathNode);
+            while (nodes.hasNext()) {
+                Node match = nodes.next();
+                matches++;
+                result += sum ? ClassMetadata.toNumber(match.value) : 1;
+            }
+        }
+        return this;
+    }
+
+    private void aggregateElements(Node context, XPathNode xPathNode) {
+        Object array = context.value;
+        int length = PrimitiveArrays.length(array);
+        if (!MatchIterator.xPathNodeWithPredicate(xPathNode)) {
+            matches += length;
+            result += sum ? PrimitiveArrays.sum(array) : length;
+            return;
+        }
+        PredicateExpression predicate = ((NodeWithPredicate) xPathNode).predicate;
+        for (int i = 0; i < length; i++) {
+            if (Predicates.testElement(predicate, context, i, length)) {
+                matches++;
+                result += sum ? PrimitiveArrays.number(array, i) : 1;
+            }
+        }
+    }
+
+    /**
+     * Checks whether all or filtered elements of a primitive array node which is not expanded yet are selected.
+     */
+    private static boolean selectsPrimitiveElements(Node context, XPathNode xPathNode) {
+        boolean allOrFiltered = xPathNode.type == XPathNodeType.SIMPLE_NODE
+                || xPathNode.type == XPathNodeType.ANY_NODE
+                || MatchIterator.xPathNodeWithPredicate(xPathNode);
+        return allOrFiltered
+                && xPathNode.relationship == NodeRelationship.CHILD
+                && (MatchIterator.anyXpathNode(xPathNode) || xPathNode.name.equals("item"))
+                && !context.isExpanded()
+                && PrimitiveArrays.isPrimitiveArray(context.value);
+    }
+}
@@ -0,0 +1,365 @@
+package rk.tools.objectxpath;
+
+import rk.tools.objectxpath.xpath.Literal;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.*;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.unmodifiableList;
+import static rk.utils.reflection.ReflectionUtils.getAllFieldsOf;
+
+/**
+ * Reflection metadata of a class.
+ * <p>
+ * Metadata is computed once per class and then shared by all evaluations,
+ * so objects of the same class are not inspected through reflection again.
+ */
+final class ClassMetadata {
+
+    /**
+     * {@link Set} of wrapper types considered as 'primitive'.
+     */
+    private static final Set<Class> primitiveTypes = new HashSet<>();
+
+    static {
+        primitiveTypes.add(Boolean.class);
+        primitiveTypes.add(Character.class);
+        primitiveTypes.add(Byte.class);
+        primitiveTypes.add(Short.class);
+        primitiveTypes.add(Integer.class);
+        primitiveTypes.add(Long.class);
+        primitiveTypes.add(Float.class);
+        primitiveTypes.add(Double.class);
+        primitiveTypes.add(String.class);
+    }
+
+    private static final ClassValue<ClassMetadata> metadata = new ClassValue<ClassMetadata>() {
+        @Override
+        protected ClassMetadata computeValue(Class<?> type) {
+            return new ClassMetadata(type);
+        }
+    };
+
+    /**
+     * Kind of objects of a class (defines how objects are converted into tree nodes).
+     */
+    enum Kind {
+        PRIMITIVE,
+        MAP,
+        COLLECTION,
+        /**
+         * Arrays of references and of primitives.
+         */
+        ARRAY,
+        OBJECT
+    }
+
+    final Class<?> type;
+    final Kind kind;
+    /**
+     * Name of an element representing object of this class.
+     */
+    final String elementName;
+    /**
+     * Fields of primitive types in declaration order.
+     */
+    final List<FieldAccessor> attributes;
+    /**
+     * Fields of non-primitive types in declaration order.
+     */
+    final List<FieldAccessor> children;
+    private final Map<String, FieldAccessor> fieldsByName;
+    /**
+     * Names of fields declared by several classes of the hierarchy (children nodes with the same name).
+     */
+    private final Set<String> shadowedNames;
+    /**
+     * Computed on first use as it requires metadata of other classes,
+     * rebuilt when it becomes {@link Reachability#isStale() stale}.
+     */
+    private volatile Reachability reachability;
+    /**
+     * {@code true} once an object of this class is converted into a tree node.
+     */
+    private volatile boolean observed;
+
+    private ClassMetadata(Class<?> type) {
+        this.type = type;
+        this.kind = kindOf(type);
+        this.elementName = elementNameOf(type);
+        if (kind != Kind.OBJECT) {
+            this.attributes = emptyList();
+            this.children = emptyList();
+            this.fieldsByName = emptyMap();
+            this.shadowedNames = emptySet();
+            return;
+        }
+        List<FieldAccessor> attributes = new ArrayList<>();
+        List<FieldAccessor> children = new ArrayList<>();
+        Map<String, FieldAccessor> fieldsByName = new HashMap<>();
+        Set<String> shadowedNames = new HashSet<>();
+        for (Field field : getAllFieldsOf(type)) {
+            FieldAccessor accessor = new FieldAccessor(field);
+            if (isPrimitive(field.getType())) {
+                attributes.add(accessor);
+            } else {
+                children.add(accessor);
+            }
+            if (fieldsByName.putIfAbsent(accessor.name, accessor) != null) {
+                shadowedNames.add(accessor.name);
+            }
+        }
+        this.attributes = unmodifiableList(attributes);
+        this.children = unmodifiableList(children);
+        this.fieldsByName = fieldsByName;
+        this.shadowedNames = shadowedNames;
+    }
+
+    static ClassMetadata of(Class<?> type) {
+        return metadata.get(type);
+    }
+
+    /**
+     * Gets metadata of the object's class and registers the class for {@link Reachability}.
+     */
+    static ClassMetadata of(Object object) {
+        ClassMetadata classMetadata = metadata.get(object.getClass());
+        if (!classMetadata.observed) {
+            classMetadata.observed = true;
+            Reachability.observe(classMetadata.type);
+        }
+        return classMetadata;
+    }
+
+    //TODO allow to customize primitive types?
+    static boolean isPrimitive(Class<?> type) {
+        return type.isPrimitive() || primitiveTypes.contains(type);
+    }
+
+    boolean isPrimitive() {
+        return kind == Kind.PRIMITIVE;
+    }
+
+    /**
+     * Finds a field (primitive or not) by name.
+     *
+     * @return field accessor or {@code null} if class has no field with such name
+     */
+    FieldAccessor field(String name) {
+        return fieldsByName.get(name);
+    }
+
+    /**
+     * @return names which can be found in a tree built from an object of this class
+     */
+    Reachability reachability() {
+        Reachability reachability = this.reachability;
+        if (reachability == null || reachability.isStale()) {
+            reachability = Reachability.of(this);
+            this.reachability = reachability;
+        }
+        return reachability;
+    }
+
+    /**
+     * @return names which can be found below a node of a value of the field
+     * or {@code null} if there is no such field (or several fields have this name)
+     */
+    Reachability fieldReachability(String name) {
+        FieldAccessor field = fieldsByName.get(name);
+        return field == null || shadowedNames.contains(name) ? null : field.reachability();
+    }
+
+    private static Kind kindOf(Class<?> type) {
+        if (isPrimitive(type)) {
+            return Kind.PRIMITIVE;
+        }
+        if (Map.class.isAssignableFrom(type)) {
+            return Kind.MAP;
+        }
+        if (Collection.class.isAssignableFrom(type)) {
+            return Kind.COLLECTION;
+        }
+        if (type.isArray()) {
+            return Kind.ARRAY;
+        }
+        return Kind.OBJECT;
+    }
+
+    /**
+     * Gets a name for an object based on it's class name.
+     */
+    private static String elementNameOf(Class<?> type) {
+        if (type.isArray()) { //e.g. items of a list of arrays
+            return "array";
+        }
+        String name = type.getSimpleName();
+        if (name.isEmpty()) { //anonymous class
+            name = type.getName().substring(type.getName().lastIndexOf('.') + 1);
+        }
+        return name.substring(0, 1).toLowerCase() + name.substring(1);
+    }
+
+    /**
+     * Converts a value into a number the way XPath {@code number()} converts its string value.
+     *
+     * @return numeric value or {@code NaN} if it's not a number
+     */
+    static double toNumber(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof String || value instanceof Character) {
+            try {
+                return Double.parseDouble(value.toString().trim());
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+        return Double.NaN;
+    }
+
+    @Override
+    public String toString() {
+        return type.getName();
+    }
+
+    /**
+     * Reads field value through a method handle.
+     * Values of primitive fields can also be read without boxing.
+     */
+    static final class FieldAccessor {
+        final Field field;
+        final String name;
+        private final MethodHandle getter;
+        /**
+         * Getter returning a primitive ({@code long} for all integral types except {@code char})
+         * or {@code null} if field is not primitive.
+         */
+        private final MethodHandle primitiveGetter;
+        private final Class<?> primitiveType;
+        private volatile Reachability reachability;
+
+        FieldAccessor(Field field) {
+            this.field = field;
+            this.name = field.getName();
+            field.setAccessible(true);
+            try {
+                MethodHandle getter = MethodHandles.lookup().unreflectGetter(field);
+                this.getter = getter.asType(MethodType.methodType(Object.class, Object.class));
+                Class<?> type = field.getType();
+                if (type == int.class || type == short.class || type == byte.class) {
+                    type = long.class;
+                }
+                this.primitiveType = type.isPrimitive() ? type : null;
+                this.primitiveGetter = type.isPrimitive()
+                        ? getter.asType(MethodType.methodType(type, Object.class))
+                        : null;
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Unable to access field " + field, e);
+            }
+        }
+
+        /**
+         * @return names which can be found below a node of a value of the field
+         */
+        Reachability reachability() {
+            Reachability reachability = this.reachability;
+            if (reachability == null || reachability.isStale()) {
+                reachability = Reachability.of(field);
+                this.reachability = reachability;
+            }
+            return reachability;
+        }
+
+        Object get(Object holder) {
+            try {
+                return (Object) getter.invokeExact(holder);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable throwable) {
+                throw new IllegalStateException("Unable to read field " + field, throwable);
+            }
+        }
+
+        /**
+         * Compares field value with a literal, primitive values are not boxed.
+         *
+         * @see Literal#matches(Object)
+         */
+        boolean matches(Object holder, Literal literal) {
+            try {
+                if (primitiveType == null) {
+                    return literal.matches((Object) getter.invokeExact(holder));
+                }
+                if (primitiveType == long.class) {
+                    return literal.matches((long) primitiveGetter.invokeExact(holder));
+                }
+                if (primitiveType == double.class) {
+                    return literal.matches((double) primitiveGetter.invokeExact(holder));
+                }
+                if (primitiveType == float.class) {
+                    return literal.matches((float) primitiveGetter.invokeExact(holder));
+                }
+                if (primitiveType == boolean.class) {
+                    return literal.matches((boolean) primitiveGetter.invokeExact(holder));
+                }
+                return literal.matches((char) primitiveGetter.invokeExact(holder));
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable throwable) {
+                throw new IllegalStateException("Unable to read field " + field, throwable);
+            }
+        }
+
+        /**
+         * @return {@code true} if field value is {@code null} (never for primitive fields)
+         */
+        boolean isNull(Object holder) {
+            return primitiveType == null && get(holder) == null;
+        }
+
+        /**
+         * Converts field value into a number the way XPath {@code number()} converts its string value,
+         * primitive values are not boxed.
+         *
+         * @return field value or {@code NaN} if it's not a number
+         */
+        double number(Object holder) {
+            try {
+                if (primitiveType == long.class) {
+                    return (long) primitiveGetter.invokeExact(holder);
+                }
+                if (primitiveType == double.class) {
+                    return (double) primitiveGetter.invokeExact(holder);
+                }
+                if (primitiveType == float.class) {
+                    return (float) primitiveGetter.invokeExact(holder);
+                }
+                if (primitiveType == char.class) {
+                    char value = (char) primitiveGetter.invokeExact(holder);
+                    return value >= '0' && value <= '9' ? value - '0' : Double.NaN;
+                }
+                if (primitiveType == boolean.class) {
+                    return Double.NaN;
+                }
+                return toNumber((Object) getter.invokeExact(holder));
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable throwable) {
+                throw new IllegalStateException("Unable to read field " + field, throwable);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return field.toString();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package rk.tools.objectxpath;
+
+import rk.tools.objectxpath.xpath.XPathNode;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * XPath query which has been validated and parsed once
+ * and can be evaluated against any number of objects.
+ * <p>
+ * Instances are immutable and can be safely shared between threads.
+ * Use {@link OXPy#compile(String)} to create one.
+ */
+public class CompiledQuery {
+    private final OXPy oxpy;
+    private final String xPathQuery;
+    private final List<XPathNode> xPathNodes;
+
+    CompiledQuery(OXPy oxpy, String xPathQuery, List<XPathNode> xPathNodes) {
+        this.oxpy = oxpy;
+        this.xPathQuery = xPathQuery;
+        this.xPathNodes = unmodifiableList(new ArrayList<>(xPathNodes));
+    }
+
+    /**
+     * Evaluates this query for the given {@code object}.
+     *
+     * @param object an object for which query should be applied
+     * @return query processing result.
+     * may return a single object or a list of objects if query resulted in several nodes.
+     * @see OXPy#process(String, Object)
+     */
+    public Optional<Object> evaluate(Object object) {
+        return evaluate(object, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Evaluates this query for an indexed object.
+     *
+     * @see ObjectIndex#evaluate(CompiledQuery)
+     */
+    public Optional<Object> evaluate(ObjectIndex index) {
+        requireNonNull(index, "index cannot be null");
+        return index.evaluate(this);
+    }
+
+    /**
+     * Evaluates this query for the given {@code object}
+     * stopping as soon as {@code limit} matches are found.
+     *
+     * @see OXPy#process(String, Object, int)
+     */
+    public Optional<Object> evaluate(Object object, int limit) {
+        requireNonNull(object, "object cannot be null");
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        return oxpy.evaluate(this, object, limit);
+    }
+
+    /**
+     * Evaluates this query for the given {@code object} stopping at the first match.
+     *
+     * @see OXPy#processFirst(String, Object)
+     */
+    public Optional<Object> evaluateFirst(Object object) {
+        requireNonNull(object, "object cannot be null");
+        return oxpy.evaluateFirst(this, object);
+    }
+
+    /**
+     * Evaluates this query for the given {@code object} passing values of matches to the consumer.
+     *
+     * @see OXPy#evaluate(String, Object, ResultConsumer)
+     */
+    public long evaluate(Object object, ResultConsumer consumer) {
+        requireNonNull(object, "object cannot be null");
+        requireNonNull(consumer, "consumer cannot be null");
+        return oxpy.evaluate(this, object, consumer);
+    }
+
+    /**
+     * Evaluates this query for the given {@code object} adding values of matches to the collection.
+     *
+     * @see OXPy#evaluateInto(String, Object, Class, Collection)
+     */
+    public <T, C extends Collection<? super T>> C evaluateInto(Object object, Class<T> type, C target) {
+        requireNonNull(type, "type cannot be null");
+        requireNonNull(target, "target cannot be null");
+        evaluate(object, value -> {
+            target.add(type.cast(value));
+            return true;
+        });
+        return target;
+    }
+
+    /**
+     * Finds locations of matches of this query for the given {@code object}.
+     *
+     * @see OXPy#locate(String, Object)
+     */
+    public List<Match> locate(Object object) {
+        requireNonNull(object, "object cannot be null");
+        return oxpy.locate(this, object);
+    }
+
+    /**
+     * Counts matches of this query for the given {@code object}.
+     *
+     * @see OXPy#count(String, Object)
+     */
+    public long count(Object object) {
+        requireNonNull(object, "object cannot be null");
+        return (long) oxpy.aggregate(this, object, false);
+    }
+
+    /**
+     * Sums numeric values of matches of this query for the given {@code object}.
+     *
+     * @see OXPy#sum(String, Object)
+     */
+    public double sum(Object object) {
+        requireNonNull(object, "object cannot be null");
+        return oxpy.aggregate(this, object, true);
+    }
+
+    /**
+     * Evaluates this query for the given {@code object} lazily.
+     *
+     * @see OXPy#processStream(String, Object)
+     */
+    public Stream<Object> stream(Object object) {
+        requireNonNull(object, "object cannot be null");
+        return oxpy.stream(this, object);
+    }
+
+    /**
+     * Evaluates this query for every object of the collection in parallel.
+     *
+     * @see OXPy#processAll(String, Collection)
+     */
+    public List<Optional<Object>> evaluateAll(Collection<?> objects) {
+        requireNonNull(objects, "objects cannot be null");
+        return evaluateAll(objects.spliterator());
+    }
+
+    /**
+     * Evaluates this query for every object provided by the spliterator in parallel.
+     *
+     * @see OXPy#processAll(String, Spliterator)
+     */
+    public List<Optional<Object>> evaluateAll(Spliterator<?> objects) {
+        requireNonNull(objects, "objects cannot be null");
+        return oxpy.evaluateAll(this, objects);
+    }
+
+    /**
+     * Describes parsed XPath nodes of this query.
+     *
+     * @see OXPy#explain(String)
+     */
+    public String explain() {
+        return QueryPlan.explain(this);
+    }
+
+    /**
+     * Evaluates this query for the given {@code object} step by step measuring every step.
+     *
+     * @see OXPy#profile(String, Object)
+     */
+    public QueryProfile profile(Object object) {
+        requireNonNull(object, "object cannot be null");
+        return oxpy.profile(this, object);
+    }
+
+    /**
+     * @return XPath query this instance was compiled from
+     */
+    public String getQuery() {
+        return xPathQuery;
+    }
+
+    /**
+     * @return parsed XPath nodes (unmodifiable)
+     */
+    public List<XPathNode> getXPathNodes() {
+        return xPathNodes;
+    }
+
+    @Override
+    public String toString() {
+        return xPathQuery;
+    }
+}
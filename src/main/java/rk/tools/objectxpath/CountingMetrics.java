@@ -0,0 +1,98 @@
+package rk.tools.objectxpath;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link OXPyMetrics} which sums statistics of all compilations and evaluations.
+ * <p>
+ * Counters are {@link LongAdder}s, so threads evaluating queries do not contend on them.
+ * Counters can be exposed by a metrics registry as function counters, e.g. with Micrometer:
+ * {@code FunctionCounter.builder("oxpy.nodes", metrics, CountingMetrics::getNodes).register(registry)}.
+ */
+public class CountingMetrics implements OXPyMetrics {
+    private final LongAdder parsedQueries = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder traversalNanos = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder fieldReads = new LongAdder();
+    private final LongAdder predicateEvaluations = new LongAdder();
+    private final LongAdder results = new LongAdder();
+
+    @Override
+    public void queryParsed(String query, long parseNanos) {
+        parsedQueries.increment();
+        this.parseNanos.add(parseNanos);
+    }
+
+    @Override
+    public void cacheHit(String query) {
+        cacheHits.increment();
+    }
+
+    @Override
+    public void cacheMiss(String query) {
+        cacheMisses.increment();
+    }
+
+    @Override
+    public void evaluated(Evaluation evaluation) {
+        evaluations.increment();
+        traversalNanos.add(evaluation.getTraversalNanos());
+        nodes.add(evaluation.getNodes());
+        fieldReads.add(evaluation.getFieldReads());
+        predicateEvaluations.add(evaluation.getPredicateEvaluations());
+        results.add(evaluation.getResults());
+    }
+
+    public long getParsedQueries() {
+        return parsedQueries.sum();
+    }
+
+    public long getParseNanos() {
+        return parseNanos.sum();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    public long getEvaluations() {
+        return evaluations.sum();
+    }
+
+    public long getTraversalNanos() {
+        return traversalNanos.sum();
+    }
+
+    public long getNodes() {
+        return nodes.sum();
+    }
+
+    public long getFieldReads() {
+        return fieldReads.sum();
+    }
+
+    public long getPredicateEvaluations() {
+        return predicateEvaluations.sum();
+    }
+
+    public long getResults() {
+        return results.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "CountingMetrics{parsedQueries=" + getParsedQueries() + ", parseNanos=" + getParseNanos()
+                + ", cacheHits=" + getCacheHits() + ", cacheMisses=" + getCacheMisses()
+                + ", evaluations=" + getEvaluations() + ", traversalNanos=" + getTraversalNanos()
+                + ", nodes=" + getNodes() + ", fieldReads=" + getFieldReads()
+                + ", predicateEvaluations=" + getPredicateEvaluations() + ", results=" + getResults() + "}";
+    }
+}
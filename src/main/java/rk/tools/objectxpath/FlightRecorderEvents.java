@@ -0,0 +1,54 @@
+package rk.tools.objectxpath;
+
+/**
+ * Emits JDK Flight Recorder events {@code oxpy.QueryEvaluation} and {@code oxpy.TreeBuild}.
+ * <p>
+ * Event API is available since Java 11, so this (Java 8) version does nothing.
+ * The version emitting events is compiled from {@code src/main/java11} into
+ * {@code META-INF/versions/11} of the multi-release jar, it's used by Java 11+ runtimes.
+ */
+final class FlightRecorderEvents {
+
+    private FlightRecorderEvents() {
+    }
+
+    /**
+     * Starts timing of an evaluation.
+     *
+     * @return event or {@code null} if events are not recorded
+     */
+    static Object beginEvaluation() {
+        return null;
+    }
+
+    /**
+     * Records an evaluation if it took longer than the event's threshold.
+     *
+     * @param event   event returned by {@link #beginEvaluation()}
+     * @param query   evaluated query
+     * @param root    object the query was evaluated for
+     * @param nodes   number of created nodes
+     * @param results number of matches
+     */
+    static void commitEvaluation(Object event, String query, Object root, long nodes, long results) {
+    }
+
+    /**
+     * Starts timing of building a whole object tree (e.g. for {@link ObjectIndex}).
+     *
+     * @return event or {@code null} if events are not recorded
+     */
+    static Object beginTreeBuild() {
+        return null;
+    }
+
+    /**
+     * Records a tree build if it took longer than the event's threshold.
+     *
+     * @param event event returned by {@link #beginTreeBuild()}
+     * @param root  object the tree was built for
+     * @param nodes number of elements and attributes of the tree
+     */
+    static void commitTreeBuild(Object event, Object root, long nodes) {
+    }
+}
@@ -0,0 +1,122 @@
+package rk.tools.objectxpath;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Converts map keys into element names and element names back into map keys,
+ * so a named child of a map node can be found by {@link Map#get(Object)}.
+ * <p>
+ * Type of the first key defines how names are converted. Only maps which compare keys by {@code equals}
+ * are looked up this way, a miss is trusted only if all keys are of the same type.
+ */
+class MapKeys {
+
+    private MapKeys() {
+    }
+
+    /**
+     * @return element name of a map entry: name of an enum constant or string representation of a key
+     */
+    static String name(Object key) {
+        return key instanceof Enum ? ((Enum<?>) key).name() : String.valueOf(key);
+    }
+
+    /**
+     * Checks whether the map finds entries by keys which are {@code equals} to provided ones,
+     * so an entry found by a restored key has the same name (unlike e.g. {@link java.util.IdentityHashMap}
+     * or a {@link java.util.TreeMap} with case insensitive comparator).
+     */
+    static boolean equalityLookup(Map<?, ?> map) {
+        if (map instanceof SortedMap) {
+            return ((SortedMap<?, ?>) map).comparator() == null;
+        }
+        return map instanceof HashMap || map instanceof ConcurrentHashMap
+                || map instanceof Hashtable || map instanceof EnumMap;
+    }
+
+    /**
+     * Checks whether all keys of the map are of the same class as {@code sampleKey},
+     * so there can't be an entry with a key of other type having the same name.
+     */
+    static boolean sameType(Map<?, ?> map, Object sampleKey) {
+        Class<?> type = sampleKey.getClass();
+        for (Object key : map.keySet()) {
+            if (key == null || key.getClass() != type) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a key of this type can be restored from an element name.
+     * Entries of maps with other keys (e.g. complex objects) can only be found by iterating over them.
+     */
+    static boolean convertible(Object key) {
+        return key instanceof String || key instanceof Integer || key instanceof Long
+                || key instanceof Short || key instanceof Byte || key instanceof Character
+                || key instanceof Boolean || key instanceof Enum;
+    }
+
+    /**
+     * Converts element name into a key of the same type as {@code sampleKey}.
+     *
+     * @return key which {@link #name(Object) name} is the same as provided one
+     * or {@code null} if there can't be such a key
+     */
+    static Object key(String name, Object sampleKey) {
+        Object key;
+        try {
+            key = convert(name, sampleKey);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        //e.g. '01' is converted into 1, but an entry with key 1 is named '1'
+        return key != null && name(key).equals(name) ? key : null;
+    }
+
+    private static Object convert(String name, Object sampleKey) {
+        if (sampleKey instanceof String) {
+            return name;
+        }
+        if (sampleKey instanceof Integer) {
+            return Integer.valueOf(name);
+        }
+        if (sampleKey instanceof Long) {
+            return Long.valueOf(name);
+        }
+        if (sampleKey instanceof Short) {
+            return Short.valueOf(name);
+        }
+        if (sampleKey instanceof Byte) {
+            return Byte.valueOf(name);
+        }
+        if (sampleKey instanceof Character) {
+            return name.length() == 1 ? name.charAt(0) : null;
+        }
+        if (sampleKey instanceof Boolean) {
+            return Boolean.valueOf(name);
+        }
+        if (sampleKey instanceof Enum) {
+            return enumConstant(((Enum<?>) sampleKey).getDeclaringClass(), name);
+        }
+        return null;
+    }
+
+    /**
+     * Finds an enum constant by {@link Enum#valueOf(Class, String)} which uses a name to constant map of the enum.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object enumConstant(Class enumType, String name) {
+        try {
+            return Enum.valueOf(enumType, name);
+        } catch (IllegalArgumentException e) { //no constant with such name
+            return null;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package rk.tools.objectxpath;
+
+/**
+ * Location of a query match in an object tree.
+ * <p>
+ * A match only references its tree node, canonical path of the match
+ * (e.g. {@code /gears/gear[1]} or {@code /engine/@volume}) is rendered from links to parent nodes
+ * each time {@link #getPath()} is called, so locating matches costs no more than finding them.
+ *
+ * @see OXPy#locate(String, Object)
+ */
+public final class Match {
+    private final Node node;
+
+    Match(Node node) {
+        this.node = node;
+    }
+
+    /**
+     * @return value of the matching node (may be {@code null})
+     */
+    public Object getValue() {
+        return node.value;
+    }
+
+    /**
+     * @return name of the matching element or attribute
+     */
+    public String getName() {
+        return node.name;
+    }
+
+    public boolean isAttribute() {
+        return node.attribute;
+    }
+
+    /**
+     * @return depth of the matching node, {@code 0} for the root
+     */
+    public int getDepth() {
+        return node.depth;
+    }
+
+    /**
+     * @return location of the parent node or {@code null} for the root
+     */
+    public Match getParent() {
+        return node.parent == null ? null : new Match(node.parent);
+    }
+
+    /**
+     * @return canonical XPath of the match relative to the queried object, {@code /} for the object itself.
+     * Positions are added to items of collections and arrays.
+     */
+    public String getPath() {
+        return node.path();
+    }
+
+    @Override
+    public String toString() {
+        return getPath();
+    }
+}
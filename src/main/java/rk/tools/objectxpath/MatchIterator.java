@@ -0,0 +1,326 @@
+package rk.tools.objectxpath;
+
+import rk.tools.objectxpath.xpath.NodeRelationship;
+import rk.tools.objectxpath.xpath.NodeWithAttribute;
+import rk.tools.objectxpath.xpath.NodeWithIndex;
+import rk.tools.objectxpath.xpath.NodeWithPredicate;
+import rk.tools.objectxpath.xpath.XPathNode;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static rk.tools.objectxpath.xpath.XPathNodeType.*;
+
+/**
+ * Lazily evaluates XPath nodes for an object tree.
+ * <p>
+ * Evaluation is depth-first: a node matched by one XPath node is immediately used
+ * as a context for the next XPath node, so matches are produced one by one in document order
+ * and evaluation stops as soon as caller stops asking for more matches.
+ */
+class MatchIterator extends NodeIterators.LazyIterator<Node> {
+    private final List<XPathNode> xPathNodes;
+    /**
+     * Index of the tree or {@code null} if the tree is not indexed.
+     */
+    private final ObjectIndex index;
+    /**
+     * Matches of every XPath node for current context node.
+     */
+    private final Iterator<Node>[] matches;
+    private int depth;
+
+    MatchIterator(List<XPathNode> xPathNodes, Node root) {
+        this(xPathNodes, root, null);
+    }
+
+    MatchIterator(List<XPathNode> xPathNodes, Node root, ObjectIndex index) {
+        this.xPathNodes = xPathNodes;
+        this.index = index;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Iterator<Node>[] matches = new Iterator[xPathNodes.size()];
+        this.matches = matches;
+        if (xPathNodes.isEmpty()) {
+            depth = -1;
+        } else {
+            matches[0] = select(root, xPathNodes.get(0), index);
+        }
+    }
+
+    @Override
+    protected Node computeNext() {
+        while (depth >= 0) {
+            Iterator<Node> nodes = matches[depth];
+            if (!nodes.hasNext()) {
+                matches[depth--] = null;
+                continue;
+            }
+            Node node = nodes.next();
+            if (depth == matches.length - 1) {
+                return node;
+            }
+            depth++;
+            matches[depth] = select(node, xPathNodes.get(depth), index);
+        }
+        return null;
+    }
+
+    /**
+     * Finds nodes matching XPath node for provided context node.
+     */
+    static Iterator<Node> select(Node context, XPathNode xPathNode) {
+        return select(context, xPathNode, null);
+    }
+
+    /**
+     * Finds nodes matching XPath node for provided context node,
+     * descendant XPath nodes are looked up in the index if the tree is indexed.
+     */
+    static Iterator<Node> select(Node context, XPathNode xPathNode, ObjectIndex index) {
+        if (xPathNode.type == ROOT_NODE) {
+            return candidates(context, single(context));
+        }
+        if (xPathNode.type == PARENT_NODE) {
+            return candidates(context, single(context.parent));
+        }
+        if (xPathNode.type == NODE_ATTRIBUTE) {
+            return index != null && xPathNode.relationship == NodeRelationship.DESCENDANT
+                    ? candidates(context, index.attributes(context, xPathNode.name))
+                    : findAttributeNode(context, xPathNode);
+        }
+        if (positionLookup(context, xPathNode)) {
+            return candidates(context, single(context.item(((NodeWithIndex) xPathNode).index,
+                    anyXpathNode(xPathNode) ? null : xPathNode.name)));
+        }
+        if (primitiveElementsFilter(context, xPathNode)) {
+            return Predicates.filterElements(context, ((NodeWithPredicate) xPathNode).predicate);
+        }
+        if (index != null && xPathNodeWithAttribute(xPathNode)) {
+            Iterator<Node> nodes = index.elementsWithAttribute(context, (NodeWithAttribute) xPathNode);
+            if (nodes != null) {
+                return candidates(context, nodes);
+            }
+        }
+        Iterator<Node> nodes = index != null && xPathNode.relationship == NodeRelationship.DESCENDANT
+                ? candidates(context, index.descendants(context, anyXpathNode(xPathNode) ? null : xPathNode.name))
+                : findNextNode(context, xPathNode);
+        if (xPathNodeWithIndex(xPathNode)) {
+            return NodeIterators.nth(nodes, ((NodeWithIndex) xPathNode).index);
+        }
+        if (xPathNodeWithAttribute(xPathNode)) {
+            NodeWithAttribute nodeWithAttribute = (NodeWithAttribute) xPathNode;
+            return NodeIterators.filter(nodes, node -> nodeHasAttribute(node, nodeWithAttribute));
+        }
+        if (xPathNodeWithPredicate(xPathNode)) {
+            return Predicates.filter(nodes, ((NodeWithPredicate) xPathNode).predicate);
+        }
+        return nodes;
+    }
+
+    private static Iterator<Node> findAttributeNode(Node node, XPathNode xPathNode) {
+        if (xPathNode.relationship == NodeRelationship.DESCENDANT) {
+            Predicate<Node> mayContain = _node -> mayContainAttribute(_node, xPathNode.name);
+            return NodeIterators.flatMap(NodeIterators.selfAndDescendants(node, mayContain),
+                    _node -> mayContain.test(_node)
+                            ? attributesNamed(_node, xPathNode.name)
+                            : Collections.emptyIterator());
+        }
+        return attributesNamed(node, xPathNode.name);
+    }
+
+    private static Iterator<Node> attributesNamed(Node node, String name) {
+        return NodeIterators.filter(candidates(node, node.attributes().iterator()), attr -> attr.name.equals(name));
+    }
+
+    private static Iterator<Node> findNextNode(Node parent, XPathNode xPathNode) {
+        if (anyXpathNode(xPathNode)) {
+            return candidates(parent, xPathNode.relationship == NodeRelationship.DESCENDANT
+                    ? NodeIterators.descendants(parent)
+                    : parent.children().iterator());
+        }
+        if (keyLookup(parent, xPathNode)) {
+            return candidates(parent, single(parent.mapChild(xPathNode.name)));
+        }
+        Iterator<Node> nodes = xPathNode.relationship == NodeRelationship.DESCENDANT
+                ? NodeIterators.descendants(parent, node -> mayContainElement(node, xPathNode.name))
+                : parent.children().iterator();
+        return NodeIterators.filter(candidates(parent, nodes), node -> node.name.equals(xPathNode.name));
+    }
+
+    /**
+     * Counts nodes examined by an XPath node if evaluation is profiled.
+     */
+    private static Iterator<Node> candidates(Node context, Iterator<Node> nodes) {
+        Traversal traversal = context.traversal;
+        return traversal.isProfiling() ? NodeIterators.peek(nodes, node -> traversal.onCandidate()) : nodes;
+    }
+
+    /**
+     * Checks whether a named child of a map node is selected, such child is found by its key
+     * instead of iterating over all entries.
+     */
+    static boolean keyLookup(Node parent, XPathNode xPathNode) {
+        return xPathNode.relationship == NodeRelationship.CHILD
+                && !anyXpathNode(xPathNode)
+                && parent.value instanceof Map;
+    }
+
+    /**
+     * Checks whether an item of a collection node is selected by its position,
+     * such item is found without creating nodes for other items.
+     */
+    private static boolean positionLookup(Node parent, XPathNode xPathNode) {
+        return xPathNode.relationship == NodeRelationship.CHILD
+                && xPathNodeWithIndex(xPathNode)
+                && (parent.value instanceof Collection || (parent.value != null && parent.value.getClass().isArray()));
+    }
+
+    /**
+     * Checks whether elements of a primitive array node which is not expanded yet are filtered by a predicate,
+     * such elements are checked without boxing them.
+     */
+    private static boolean primitiveElementsFilter(Node parent, XPathNode xPathNode) {
+        return xPathNode.relationship == NodeRelationship.CHILD
+                && xPathNodeWithPredicate(xPathNode)
+                && (anyXpathNode(xPathNode) || xPathNode.name.equals("item"))
+                && !parent.isExpanded()
+                && PrimitiveArrays.isPrimitiveArray(parent.value);
+    }
+
+    /**
+     * Checks whether children selected by XPath node are found without iterating over all children
+     * (so they should not be split between parallel tasks).
+     */
+    static boolean selectsDirectly(Node parent, XPathNode xPathNode) {
+        return keyLookup(parent, xPathNode) || primitiveElementsFilter(parent, xPathNode);
+    }
+
+    private static Iterator<Node> single(Node node) {
+        return node == null ? Collections.emptyIterator() : Collections.singletonList(node).iterator();
+    }
+
+    /**
+     * Checks whether element XPath node does not depend on positions of candidates,
+     * so every candidate can be checked by {@link #matches(Node, XPathNode)} on its own.
+     */
+    static boolean matchesIndividually(XPathNode xPathNode) {
+        if (xPathNodeWithPredicate(xPathNode)) {
+            return !((NodeWithPredicate) xPathNode).predicate.isPositional();
+        }
+        return xPathNode.type == SIMPLE_NODE
+                || xPathNode.type == ANY_NODE
+                || xPathNode.type == NODE_WITH_ATTRIBUTE
+                || xPathNode.type == ANY_NODE_WITH_ATTRIBUTE;
+    }
+
+    /**
+     * Checks whether a node matches element XPath node
+     * (except position and positional predicates, which depend on other nodes).
+     */
+    static boolean matches(Node node, XPathNode xPathNode) {
+        if (!anyXpathNode(xPathNode) && !node.name.equals(xPathNode.name)) {
+            return false;
+        }
+        if (xPathNodeWithAttribute(xPathNode)) {
+            return nodeHasAttribute(node, (NodeWithAttribute) xPathNode);
+        }
+        if (xPathNodeWithPredicate(xPathNode)) {
+            return Predicates.test(((NodeWithPredicate) xPathNode).predicate, node, 0, 0);
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether there can be an element with provided name below the node,
+     * so descendant search can skip subtrees which never contain it.
+     */
+    static boolean mayContainElement(Node node, String name) {
+        Reachability reachability = reachability(node);
+        return reachability != null && reachability.mayContainElement(name);
+    }
+
+    /**
+     * Checks whether the node or nodes below it can have an attribute with provided name.
+     */
+    private static boolean mayContainAttribute(Node node, String name) {
+        Reachability reachability = reachability(node);
+        return reachability != null && reachability.mayContainAttribute(name);
+    }
+
+    /**
+     * Collections and arrays held by object fields are checked against the field's declared element type,
+     * other nodes are checked against the class of their value.
+     *
+     * @return names below the node or {@code null} if node's value is {@code null}
+     */
+    private static Reachability reachability(Node node) {
+        if (node.value == null) {
+            return null;
+        }
+        ClassMetadata metadata = ClassMetadata.of(node.value);
+        if ((metadata.kind == ClassMetadata.Kind.COLLECTION || metadata.kind == ClassMetadata.Kind.ARRAY)
+                && node.parent != null && node.parent.value != null && node.index == 0) {
+            Reachability field = ClassMetadata.of(node.parent.value).fieldReachability(node.name);
+            if (field != null) {
+                return field;
+            }
+        }
+        return metadata.reachability();
+    }
+
+    /**
+     * Compares attribute value with predicate's literal without converting it into a string.
+     */
+    private static boolean nodeHasAttribute(Node node, NodeWithAttribute xPathNode) {
+        if (node.value == null) {
+            return false;
+        }
+        node.traversal.onPredicate();
+        ClassMetadata.FieldAccessor field = ClassMetadata.of(node.value).field(xPathNode.attrName);
+        if (field == null) {
+            return false;
+        }
+        node.traversal.onFieldRead(1);
+        return field.matches(node.value, xPathNode.literal);
+    }
+
+    /**
+     * @return string value of a node's field used by attribute predicates
+     * or {@code null} if there is no such field or its value is {@code null}
+     */
+    static String attributeValue(Node node, String attrName) {
+        if (node.value == null) {
+            return null;
+        }
+        ClassMetadata.FieldAccessor field = ClassMetadata.of(node.value).field(attrName);
+        if (field == null) {
+            return null;
+        }
+        node.traversal.onFieldRead(1);
+        Object value = field.get(node.value);
+        return value == null ? null : String.valueOf(value);
+    }
+
+    private static boolean xPathNodeWithIndex(XPathNode xPathNode) {
+        return xPathNode.type == ANY_NODE_WITH_INDEX || xPathNode.type == NODE_WITH_INDEX;
+    }
+
+    private static boolean xPathNodeWithAttribute(XPathNode xPathNode) {
+        return xPathNode.type == ANY_NODE_WITH_ATTRIBUTE || xPathNode.type == NODE_WITH_ATTRIBUTE;
+    }
+
+    static boolean xPathNodeWithPredicate(XPathNode xPathNode) {
+        return xPathNode.type == ANY_NODE_WITH_PREDICATE || xPathNode.type == NODE_WITH_PREDICATE;
+    }
+
+    static boolean anyXpathNode(XPathNode xPathNode) {
+        return xPathNode.type == ANY_NODE_WITH_ATTRIBUTE
+                || xPathNode.type == ANY_NODE_WITH_INDEX
+                || xPathNode.type == ANY_NODE_WITH_PREDICATE
+                || xPathNode.type == ANY_NODE;
+    }
+}
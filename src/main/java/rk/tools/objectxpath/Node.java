@@ -0,0 +1,504 @@
+package rk.tools.objectxpath;
+
+import java.util.*;
+
+import static java.util.Collections.emptyList;
+import static rk.tools.objectxpath.Lists.transformList;
+
+/**
+ * Represents object tree node.
+ * <p>
+ * Tree nodes are resolved lazily, only when some XPath node visits them:
+ * attributes and children of a node are created on first access
+ * but are not expanded themselves, so only visited part of an object graph is processed.
+ * <p>
+ * A node which references the same object as one of its ancestors (e.g. a back-reference to a parent)
+ * has attributes but does not have children, so cyclic object graphs are represented by finite trees.
+ */
+class Node {
+    /**
+     * Path segments cached for cycle detection cover {@code 32}, {@code 32^2} and {@code 32^3} levels.
+     */
+    private static final int PATH_SEGMENT_BITS = 5;
+    private static final int PATH_SEGMENT_LEVELS = 3;
+
+    final Node parent;
+    final String name;
+    /**
+     * Position of a collection item (starting from {@code 1}), {@code 0} for other nodes.
+     */
+    final int index;
+    /**
+     * {@code true} for nodes representing attributes (fields of primitive types).
+     */
+    final boolean attribute;
+    final Object value;
+    final int depth;
+    final Traversal traversal;
+    /**
+     * Position of the node in document order and position of its last descendant,
+     * set only for nodes of {@link ObjectIndex}.
+     */
+    int order;
+    int subtreeEnd;
+    /**
+     * {@code null} until node is expanded.
+     * Volatile (as well as {@link #children}) so nodes can be expanded by parallel evaluation tasks.
+     */
+    private volatile List<Node> attributes;
+    /**
+     * {@code null} until node is expanded.
+     */
+    private volatile List<Node> children;
+    /**
+     * Values of ancestors above this node up to the previous segment,
+     * set only for nodes at depths which are multiples of {@code 32} (when needed).
+     */
+    private volatile PathSegment pathSegment;
+    /**
+     * Children of an expanded map node by their names, built on first lookup by {@link #mapChild(String)}.
+     */
+    private volatile Map<String, Node> childrenByName;
+    /**
+     * Result of {@link #referencedByAncestor()} once it's checked: {@code 0} if not checked yet,
+     * {@code 1} if the value is not referenced by ancestors, {@code 2} if it is.
+     */
+    private volatile byte cycle;
+
+    private Node(Node parent, Object value, String name, int index) {
+        this(parent, parent.traversal, value, name, index, false);
+    }
+
+    private Node(Node parent, Traversal traversal, Object value, String name, int index, boolean attribute) {
+        this.parent = parent;
+        this.name = name;
+        this.value = value;
+        this.depth = parent == null ? 0 : parent.depth + 1;
+        this.traversal = traversal;
+        this.index = index;
+        this.attribute = attribute;
+    }
+
+    /**
+     * Creates a 'tree' from an object, expansion of its nodes is checked against traversal limits.
+     *
+     * @param object an object for which a tree will created
+     * @return tree root node
+     */
+    static Node root(Object object, Traversal traversal) {
+        return new Node(null, traversal, object, ClassMetadata.of(object).elementName, 0, false);
+    }
+
+    List<Node> attributes() {
+        if (attributes == null) {
+            expand();
+        }
+        return attributes;
+    }
+
+    List<Node> children() {
+        if (children == null) {
+            expand();
+        }
+        return children;
+    }
+
+    /**
+     * Resolves attributes and children of this node.
+     * Lists are fully built before they are published. Parallel evaluation tasks may reach the same node,
+     * so the node is expanded under its lock once: children are created (and counted by traversal) only once
+     * and all tasks see the same child nodes.
+     */
+    private synchronized void expand() {
+        if (children != null) {
+            return;
+        }
+        List<Node> attributes = emptyList();
+        List<Node> children = emptyList();
+        if (null != value) {
+            ClassMetadata metadata = ClassMetadata.of(value);
+            boolean hasChildren = metadata.kind != ClassMetadata.Kind.PRIMITIVE && !referencedByAncestor();
+            int attributeCount = metadata.kind == ClassMetadata.Kind.OBJECT ? metadata.attributes.size() : 0;
+            traversal.beforeExpand(this, attributeCount + (hasChildren ? childCount(metadata) : 0));
+            if (metadata.kind == ClassMetadata.Kind.OBJECT) {
+                traversal.onFieldRead(attributeCount);
+                attributes = transformList(metadata.attributes, field
+                        -> new Node(this, traversal, field.get(value), field.name, 0, true));
+            }
+            if (hasChildren) {
+                switch (metadata.kind) {
+                    case MAP:
+                        children = processMapNode();
+                        break;
+                    case COLLECTION:
+                        children = processCollectionNode();
+                        break;
+                    case ARRAY:
+                        children = processArrayNode();
+                        break;
+                    case OBJECT:
+                        traversal.onFieldRead(metadata.children.size());
+                        children = transformList(metadata.children, field
+                                -> new Node(this, field.get(value), field.name, 0));
+                        break;
+                }
+            }
+        }
+        traversal.onExpand(this, attributes.size() + children.size());
+        this.attributes = attributes;
+        this.children = children;
+    }
+
+    /**
+     * @return max number of children the node gets when expanded ({@code null} items are counted)
+     */
+    private int childCount(ClassMetadata metadata) {
+        switch (metadata.kind) {
+            case MAP:
+                return ((Map<?, ?>) value).size();
+            case COLLECTION:
+                return ((Collection<?>) value).size();
+            case ARRAY:
+                return PrimitiveArrays.isPrimitiveArray(value)
+                        ? PrimitiveArrays.length(value)
+                        : ((Object[]) value).length;
+            case OBJECT:
+                return metadata.children.size();
+            default:
+                return 0;
+        }
+    }
+
+    private List<Node> processCollectionNode() {
+        return processItems((Collection<?>) value);
+    }
+
+    private List<Node> processItems(Collection<?> items) {
+        Object element = nthItem(items, 1);
+        if (element == null) { //empty or all items are null
+            return emptyList();
+        }
+
+        String itemName = itemName(element);
+        List<Node> children = new ArrayList<>(items.size());
+        int i = 1;
+        for (Object item : items) {
+            if (item != null) {
+                children.add(new Node(this, item, itemName, i++));
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Items of reference arrays are converted the same way as items of collections,
+     * all elements of primitive arrays are named 'item'.
+     */
+    private List<Node> processArrayNode() {
+        if (!PrimitiveArrays.isPrimitiveArray(value)) {
+            Object[] array = (Object[]) value;
+            return array.length == 0 ? emptyList() : processItems(Arrays.asList(array));
+        }
+        int length = PrimitiveArrays.length(value);
+        List<Node> children = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            children.add(new Node(this, PrimitiveArrays.get(value, i), "item", i + 1));
+        }
+        return children;
+    }
+
+    /**
+     * Finds an item of a collection or array node by its position.
+     * If the node is not expanded yet the item is found without creating nodes for other items:
+     * items of {@link RandomAccess} lists and arrays are read by index, other collections are iterated
+     * up to the position, only elements of primitive arrays are found in constant time
+     * as they're never {@code null}.
+     *
+     * @param position position of the item starting from {@code 1} ({@code null} items are not counted)
+     * @param name     expected name of the item or {@code null} if any name is expected
+     * @return item node or {@code null} if there is no such item
+     */
+    Node item(int position, String name) {
+        if (position < 1) {
+            return null;
+        }
+        List<Node> children = this.children;
+        if (children == null && !referencedByAncestor()) {
+            if (PrimitiveArrays.isPrimitiveArray(value)) {
+                if ((name != null && !name.equals("item")) || position > PrimitiveArrays.length(value)) {
+                    return null;
+                }
+                return primitiveElement(position - 1);
+            }
+            Collection<?> collection = value instanceof Collection
+                    ? (Collection<?>) value
+                    : Arrays.asList((Object[]) value);
+            Object first = nthItem(collection, 1);
+            if (first == null || (name != null && !name.equals(itemName(first)))) {
+                return null;
+            }
+            Object item = position == 1 ? first : nthItem(collection, position);
+            if (item == null) {
+                return null;
+            }
+            traversal.onExpand(this, 1);
+            return new Node(this, item, itemName(first), position);
+        }
+        children = children();
+        if (position > children.size()) {
+            return null;
+        }
+        Node item = children.get(position - 1);
+        return name == null || name.equals(item.name) ? item : null;
+    }
+
+    /**
+     * Creates a node for an element of a primitive array node which is not expanded,
+     * so the element is boxed only when it's selected.
+     */
+    Node primitiveElement(int index) {
+        traversal.onExpand(this, 1);
+        return new Node(this, PrimitiveArrays.get(value, index), "item", index + 1);
+    }
+
+    /**
+     * Checks whether attributes and children of the node are resolved.
+     */
+    boolean isExpanded() {
+        return children != null;
+    }
+
+    /**
+     * Finds n-th not {@code null} item of a collection without allocating anything for {@link RandomAccess} lists.
+     *
+     * @return item or {@code null} if collection has less items
+     */
+    private static Object nthItem(Collection<?> collection, int position) {
+        int count = 0;
+        if (collection instanceof RandomAccess && collection instanceof List) {
+            List<?> list = (List<?>) collection;
+            for (int i = 0, size = list.size(); i < size; i++) {
+                Object item = list.get(i);
+                if (item != null && ++count == position) {
+                    return item;
+                }
+            }
+            return null;
+        }
+        for (Object item : collection) {
+            if (item != null && ++count == position) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Items of a collection are named after the type of the first item
+     * (it's expected that all items are of the same type).
+     */
+    private static String itemName(Object item) {
+        ClassMetadata metadata = ClassMetadata.of(item);
+        return metadata.isPrimitive()
+                ? "item"
+                : metadata.elementName;
+    }
+
+    private List<Node> processMapNode() {
+        Map<?, ?> map = (Map<?, ?>) value;
+        if (map.isEmpty()) {
+            return emptyList();
+        }
+        List<Node> children = new ArrayList<>(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            children.add(new Node(this, entry.getValue(), MapKeys.name(entry.getKey()), 0));
+        }
+        return children;
+    }
+
+    /**
+     * Finds a child of a map node by name.
+     * If the node is not expanded yet, the map compares keys by {@code equals} and keys can be restored
+     * from names (strings, numbers, enums), the entry is resolved by a single {@link Map#get(Object)},
+     * nodes for other entries are not created. If such lookup misses and keys are of different types,
+     * an entry with a key of other type may still have the name, so the node is expanded.
+     * Children of an expanded node are found in a map of children by their names.
+     *
+     * @return child node or {@code null} if there is no entry with such name
+     */
+    Node mapChild(String name) {
+        Map<?, ?> map = (Map<?, ?>) value;
+        if (children == null && !map.isEmpty() && MapKeys.equalityLookup(map) && !referencedByAncestor()) {
+            Object sampleKey = map.keySet().iterator().next();
+            if (MapKeys.convertible(sampleKey)) {
+                Node entry = mapEntry(map, MapKeys.key(name, sampleKey), name);
+                if (entry != null || MapKeys.sameType(map, sampleKey)) {
+                    return entry;
+                }
+            }
+        }
+        Map<String, Node> childrenByName = this.childrenByName;
+        if (childrenByName == null) {
+            List<Node> children = children();
+            childrenByName = new HashMap<>(Math.max(16, children.size() * 4 / 3 + 1));
+            for (Node child : children) {
+                childrenByName.putIfAbsent(child.name, child);
+            }
+            this.childrenByName = childrenByName;
+        }
+        return childrenByName.get(name);
+    }
+
+    /**
+     * Finds an entry by a key restored from its name.
+     * Entries of sorted maps are found with their actual keys, which have to have the same name.
+     */
+    private Node mapEntry(Map<?, ?> map, Object key, String name) {
+        if (key == null) {
+            return null;
+        }
+        Object entryValue;
+        try {
+            if (map instanceof NavigableMap) {
+                Map.Entry<?, ?> entry = ((NavigableMap<?, ?>) map).ceilingEntry(cast(key));
+                if (entry == null || !MapKeys.name(entry.getKey()).equals(name)) {
+                    return null;
+                }
+                entryValue = entry.getValue();
+            } else {
+                //keys are compared by equals, equal keys of convertible types have the same name
+                entryValue = map.get(key);
+                if (entryValue == null && !map.containsKey(key)) {
+                    return null;
+                }
+            }
+        } catch (ClassCastException e) { //keys of different types in a sorted map
+            return null;
+        }
+        traversal.onExpand(this, 1);
+        return new Node(this, entryValue, name, 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> K cast(Object key) {
+        return (K) key;
+    }
+
+    /**
+     * Checks whether the value is referenced by one of ancestors (compared by identity),
+     * such nodes do not have children, so cycles are not followed.
+     * <p>
+     * Only the node's own path is inspected, no state is shared between different branches.
+     * A node at depth which is a multiple of {@code 32^k} caches values of {@code 32^k - 1} ancestors above it,
+     * so a path is checked by comparing at most {@code 32} ancestors and looking up at most {@code 32}
+     * segments of every size instead of comparing all ancestors. The result is kept,
+     * so the path of a node is inspected only once.
+     */
+    private boolean referencedByAncestor() {
+        byte cycle = this.cycle;
+        if (cycle == 0) {
+            cycle = findInAncestors() ? (byte) 2 : (byte) 1;
+            this.cycle = cycle;
+        }
+        return cycle == 2;
+    }
+
+    private boolean findInAncestors() {
+        Node ancestor = parent;
+        while (ancestor != null) {
+            if (ancestor.value == value) {
+                return true;
+            }
+            int segmentLength = pathSegmentLength(ancestor.depth);
+            if (segmentLength > 1) {
+                PathSegment segment = ancestor.pathSegment(segmentLength);
+                if (segment.values.contains(value)) {
+                    return true;
+                }
+                ancestor = segment.start;
+            } else {
+                ancestor = ancestor.parent;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return number of levels covered by a path segment of a node at provided depth,
+     * {@code 1} if such node does not have a segment
+     */
+    private static int pathSegmentLength(int depth) {
+        int length = 1;
+        for (int level = 1; level <= PATH_SEGMENT_LEVELS; level++) {
+            int next = 1 << (PATH_SEGMENT_BITS * level);
+            if (depth % next != 0) {
+                break;
+            }
+            length = next;
+        }
+        return depth == 0 ? 1 : length;
+    }
+
+    private PathSegment pathSegment(int length) {
+        PathSegment segment = pathSegment;
+        if (segment == null) {
+            Set<Object> values = Collections.newSetFromMap(new IdentityHashMap<>(length));
+            Node ancestor = parent;
+            for (int i = 1; i < length; i++) {
+                values.add(ancestor.value);
+                ancestor = ancestor.parent;
+            }
+            segment = new PathSegment(values, ancestor);
+            pathSegment = segment;
+        }
+        return segment;
+    }
+
+    /**
+     * Renders canonical path of the node relative to the root ({@code /} for the root itself),
+     * e.g. {@code /gears/gear[1]} or {@code /engine/@volume}.
+     * It's not stored in nodes as for deep trees paths of all nodes take quadratic memory.
+     */
+    String path() {
+        if (parent == null) {
+            return "/";
+        }
+        Deque<Node> nodes = new ArrayDeque<>(depth);
+        for (Node node = this; node.parent != null; node = node.parent) {
+            nodes.push(node);
+        }
+        StringBuilder path = new StringBuilder();
+        for (Node node : nodes) {
+            path.append('/');
+            if (node.attribute) {
+                path.append('@');
+            }
+            path.append(node.name);
+            if (node.index > 0) {
+                path.append('[').append(node.index).append(']');
+            }
+        }
+        return path.toString();
+    }
+
+    @Override
+    public String toString() {
+        return path();
+    }
+
+    /**
+     * Values of ancestors between a node and its ancestor a segment length above (exclusive).
+     */
+    private static class PathSegment {
+        final Set<Object> values;
+        /**
+         * Ancestor a segment length above, the next one to be checked.
+         */
+        final Node start;
+
+        PathSegment(Set<Object> values, Node start) {
+            this.values = values;
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package rk.tools.objectxpath;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Lazy iterators over tree nodes.
+ * Nodes are visited (and expanded) only when iterator is advanced.
+ */
+class NodeIterators {
+
+    /**
+     * Iterator which computes next element only when it is requested.
+     */
+    static abstract class LazyIterator<T> implements Iterator<T> {
+        private T next;
+
+        /**
+         * @return next element or {@code null} if there are no more elements
+         */
+        protected abstract T computeNext();
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = computeNext();
+            }
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T result = next;
+            next = null;
+            return result;
+        }
+    }
+
+    /**
+     * Iterates over descendants of a node in document order (not including the node itself).
+     */
+    static Iterator<Node> descendants(Node node) {
+        return descendants(node, _node -> true);
+    }
+
+    /**
+     * Iterates over descendants of a node in document order (not including the node itself)
+     * skipping descendants of nodes which do not match {@code expand} predicate.
+     */
+    static Iterator<Node> descendants(Node node, Predicate<Node> expand) {
+        return new LazyIterator<Node>() {
+            private final Deque<Iterator<Node>> stack = new ArrayDeque<>();
+            /**
+             * Last returned node, its children are pushed to the stack only when next node is requested.
+             */
+            private Node pending = node;
+
+            @Override
+            protected Node computeNext() {
+                if (pending != null) {
+                    if (expand.test(pending)) {
+                        stack.push(pending.children().iterator());
+                    }
+                    pending = null;
+                }
+                while (!stack.isEmpty()) {
+                    Iterator<Node> children = stack.peek();
+                    if (!children.hasNext()) {
+                        stack.pop();
+                        continue;
+                    }
+                    pending = children.next();
+                    return pending;
+                }
+                return null;
+            }
+        };
+    }
+
+    static Iterator<Node> filter(Iterator<Node> nodes, Predicate<Node> predicate) {
+        return new LazyIterator<Node>() {
+            @Override
+            protected Node computeNext() {
+                while (nodes.hasNext()) {
+                    Node node = nodes.next();
+                    if (predicate.test(node)) {
+                        return node;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Calls {@code action} for every node when it's iterated over.
+     */
+    static Iterator<Node> peek(Iterator<Node> nodes, Consumer<Node> action) {
+        return new LazyIterator<Node>() {
+            @Override
+            protected Node computeNext() {
+                if (!nodes.hasNext()) {
+                    return null;
+                }
+                Node node = nodes.next();
+                action.accept(node);
+                return node;
+            }
+        };
+    }
+
+    /**
+     * Replaces every node with an iterator returned by {@code mapper} and iterates over all of them.
+     */
+    static Iterator<Node> flatMap(Iterator<Node> nodes, Function<Node, Iterator<Node>> mapper) {
+        return new LazyIterator<Node>() {
+            private Iterator<Node> current = null;
+
+            @Override
+            protected Node computeNext() {
+                while (current == null || !current.hasNext()) {
+                    if (!nodes.hasNext()) {
+                        return null;
+                    }
+                    current = mapper.apply(nodes.next());
+                }
+                return current.next();
+            }
+        };
+    }
+
+    /**
+     * Iterates over a single node at provided position (starting with 1)
+     * without iterating further than that position.
+     */
+    static Iterator<Node> nth(Iterator<Node> nodes, int position) {
+        return new LazyIterator<Node>() {
+            private boolean done;
+
+            @Override
+            protected Node computeNext() {
+                if (done || position < 1) {
+                    return null;
+                }
+                done = true;
+                for (int i = 1; nodes.hasNext(); i++) {
+                    Node node = nodes.next();
+                    if (i == position) {
+                        return node;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Iterates over provided node and its descendants in document order
+     * skipping descendants of nodes which do not match {@code expand} predicate.
+     */
+    static Iterator<Node> selfAndDescendants(Node node, Predicate<Node> expand) {
+        return new LazyIterator<Node>() {
+            private Iterator<Node> descendants;
+
+            @Override
+            protected Node computeNext() {
+                if (descendants == null) {
+                    descendants = descendants(node, expand);
+                    return node;
+                }
+                return descendants.hasNext() ? descendants.next() : null;
+            }
+        };
+    }
+}
@@ -3,54 +3,46 @@
  */
 package rk.tools.objectxpath;
 
+import rk.tools.objectxpath.exception.EvaluationLimitExceededError;
 import rk.tools.objectxpath.exception.InvalidXPathExpressionError;
 import rk.tools.objectxpath.xpath.*;
-import rk.utils.reflection.ReflectionUtils;
-import rk.utils.reflection.exception.FieldNotFoundError;
 
+import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
-import java.lang.reflect.Field;
 import java.util.*;
-import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import static java.util.Collections.emptyList;
 import static java.util.Objects.requireNonNull;
 import static rk.tools.objectxpath.Lists.arrayListOf;
-import static rk.tools.objectxpath.Lists.transformList;
-import static rk.tools.objectxpath.xpath.XPathNodeType.*;
-import static rk.utils.reflection.ReflectionUtils.*;
 
 public class OXPy {
 
-    private static final List<XPathNodeType> NODE_TYPES = arrayListOf( //order is important here
-            ROOT_NODE,
-            PARENT_NODE,
-            ANY_NODE_WITH_ATTRIBUTE,
-            ANY_NODE_WITH_INDEX,
-            NODE_WITH_ATTRIBUTE,
-            NODE_WITH_INDEX,
-            ANY_NODE,
-            SIMPLE_NODE,
-            NODE_ATTRIBUTE
-    );
+    /**
+     * Per-thread JDK XPath compiler used for query validation ({@link javax.xml.xpath.XPath} is not thread-safe).
+     */
+    private static final ThreadLocal<XPath> xPathValidator =
+            ThreadLocal.withInitial(() -> XPathFactory.newInstance().newXPath());
 
     /**
-     * {@link Set} of wrapper types considered as 'primitive'.
+     * Position before a step name which starts with a number.
      */
-    private static final Set<Class> primitiveTypes = new HashSet<>();
+    private static final Pattern NUMERIC_STEP = Pattern.compile("(?<=/)(?=-?[0-9])");
+
+    private final OXPyConfig config;
+    private final QueryCache queryCache;
 
-    static {
-        primitiveTypes.add(Boolean.class);
-        primitiveTypes.add(Character.class);
-        primitiveTypes.add(Byte.class);
-        primitiveTypes.add(Short.class);
-        primitiveTypes.add(Integer.class);
-        primitiveTypes.add(Long.class);
-        primitiveTypes.add(Float.class);
-        primitiveTypes.add(Double.class);
-        primitiveTypes.add(String.class);
+    public OXPy() {
+        this(new OXPyConfig());
+    }
+
+    public OXPy(OXPyConfig config) {
+        requireNonNull(config, "config cannot be null");
+        this.config = new OXPyConfig(config);
+        this.queryCache = new QueryCache(this.config.getQueryCacheSize(), this.config.getMetrics());
     }
 
     /**
@@ -61,350 +53,427 @@ public class OXPy {
      * @param object     an object for which query should be applied
      * @return query processing result.
      * may return a single object or a list of objects if provided query resulted in several nodes.
+     * @throws EvaluationLimitExceededError if evaluation exceeds one of limits configured by {@link OXPyConfig}
      */
     public Optional<Object> process(String xPathQuery, Object object) {
         requireNonNull(xPathQuery, "xPathQuery cannot be null");
         requireNonNull(object, "object cannot be null");
+        return compile(xPathQuery).evaluate(object);
+    }
 
-        //todo allow to disable xpath check through configuration (for better performance)
-        checkXpathExpression(xPathQuery);
+    /**
+     * Validates and parses XPath query so it can be evaluated multiple times
+     * without paying for validation and parsing again.
+     *
+     * @param xPathQuery XPath query
+     * @return immutable thread-safe compiled query
+     * @throws InvalidXPathExpressionError if provided query is invalid
+     */
+    public CompiledQuery compile(String xPathQuery) {
+        requireNonNull(xPathQuery, "xPathQuery cannot be null");
+        return queryCache.get(xPathQuery, this::compileQuery);
+    }
 
-        List<XPathNode> xPathNodes = parseXPath(xPathQuery);
-        List<Node> nodes = arrayListOf(objectToTree(object));
-        List<Node> result = arrayListOf();
+    /**
+     * @return cache of compiled queries used by {@link #compile(String)}
+     * and {@link #process(String, Object)}
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
 
-        while (xPathNodes.size() > 0) {
-            XPathNode xPathNode = xPathNodes.remove(0);
-            boolean lastXpathNode = xPathNodes.isEmpty();
-            if (xPathNode.type == ROOT_NODE) {
-                result.add(nodes.get(0));
-                break;
-            }
-            for (Node node : Lists.removeAll(nodes)) {
-                List<Node> foundNodes = findNextNode(node, xPathNode);
-                if (xPathNodeWithIndex(xPathNode)) {
-                    int index = ((NodeWithIndex) xPathNode).index - 1;
-                    Optional<Node> _node = getNodeWithIndex(foundNodes, index);
-                    if (_node.isPresent()) {
-                        nodes.add(_node.get());
-                        if (lastXpathNode) {
-                            result.add(_node.get());
-                        }
-                    }
-                    continue;
-                }
-                if (foundNodes.size() == 1) {
-                    node = foundNodes.get(0);
-                    if (nodeMatchesXpathNode(node, xPathNode)) {
-                        nodes.add(node);
-                        if (lastXpathNode) {
-                            result.add(node);
-                        }
-                    }
-                } else {
-                    foundNodes.forEach(_node -> {
-                        if (nodeMatchesXpathNode(_node, xPathNode)) {
-                            nodes.add(_node);
-                            if (lastXpathNode) {
-                                result.add(_node);
-                            }
-                        }
-                    });
-                }
-            }
-        }
-        if (result.size() == 0) {
-            return Optional.empty();
+    private CompiledQuery compileQuery(String xPathQuery) {
+        OXPyMetrics metrics = config.getMetrics();
+        long start = metrics == OXPyMetrics.NONE ? 0 : System.nanoTime();
+        if (config.isValidateQueries()) {
+            checkXpathExpression(xPathQuery);
         }
-        if (result.size() == 1) {
-            return Optional.ofNullable(result.get(0).value);
+        CompiledQuery query = new CompiledQuery(this, xPathQuery, XPathParser.parse(xPathQuery));
+        if (metrics != OXPyMetrics.NONE) {
+            metrics.queryParsed(xPathQuery, System.nanoTime() - start);
         }
-        return Optional.of(
-                result.stream()
-                        .map(node -> node.value)
-                        .collect(Collectors.toList())
-        );
+        return query;
     }
 
     /**
-     * Finds XPath node matching provided XPath string.
+     * Processes XPath query for the given {@code object}
+     * and returns not more than {@code limit} matches.
+     * Evaluation stops as soon as {@code limit} matches are found.
      *
-     * @param xPath XPath string
-     * @return {@link Optional} of {@link XPathNode}
+     * @param xPathQuery XPath query
+     * @param object     an object for which query should be applied
+     * @param limit      max number of matches
+     * @return query processing result.
+     * may return a single object or a list of objects if provided query resulted in several nodes.
      */
-    private Optional<XPathNode> findNextXPathNode(String xPath) {
-        for (XPathNodeType nodeType : NODE_TYPES) {
-            Matcher matcher = nodeType.pattern.matcher(xPath);
-            if (nodeType.matches(matcher)) {
-                return Optional.of(nodeType.create(matcher));
-            }
-        }
-        return Optional.empty();
+    public Optional<Object> process(String xPathQuery, Object object, int limit) {
+        requireNonNull(xPathQuery, "xPathQuery cannot be null");
+        requireNonNull(object, "object cannot be null");
+        return compile(xPathQuery).evaluate(object, limit);
     }
 
     /**
-     * Parses provided XPath string and converts it
-     * into a list of {@link XPathNode}.
+     * Processes XPath query for the given {@code object} and returns the first match (in document order).
+     * Evaluation stops as soon as the first match is found.
      *
-     * @param xPath XPath string
-     * @return list of {@link XPathNode}
+     * @param xPathQuery XPath query
+     * @param object     an object for which query should be applied
+     * @return value of the first matching node or {@link Optional#empty()}
+     * if there are no matches or matching node has {@code null} value
      */
-    private List<XPathNode> parseXPath(String xPath) {
-        List<XPathNode> nodes = new LinkedList<>(); //LinkedList for better 'remove' performance
-        Optional<XPathNode> node_;
-        while ((node_ = findNextXPathNode(xPath)).isPresent()) {
-            XPathNode node = node_.get();
-            nodes.add(node);
-            xPath = xPath.substring(node.endIndex);
-        }
-        return nodes;
+    public Optional<Object> processFirst(String xPathQuery, Object object) {
+        requireNonNull(xPathQuery, "xPathQuery cannot be null");
+        requireNonNull(object, "object cannot be null");
+        return compile(xPathQuery).evaluateFirst(object);
     }
 
-    private boolean nodeHasAttribute(Node node, String attrName, Object attrValue) {
-        return node.value != null && getFieldValue(attrName, node.value)
-                .filter(attr -> Objects.equals(attrValue, attr)).isPresent();
+    /**
+     * Processes XPath query for the given {@code object} lazily.
+     * Object tree is traversed only as far as it is needed to produce consumed elements,
+     * so short-circuiting operations like {@link Stream#limit(long)} or {@link Stream#findFirst()}
+     * stop the traversal.
+     *
+     * @param xPathQuery XPath query
+     * @param object     an object for which query should be applied
+     * @return sequential stream of matching values in document order (may contain {@code null} values)
+     */
+    public Stream<Object> processStream(String xPathQuery, Object object) {
+        requireNonNull(xPathQuery, "xPathQuery cannot be null");
+        requireNonNull(object, "object cannot be null");
+        return compile(xPathQuery).stream(object);
     }
 
-    private Optional<Node> getNodeWithIndex(List<Node> nodes, int index) {
-        if (nodes.size() == 0) {
-            return Optional.empty();
-        }
-        if (index >= nodes.size()) {
-            return Optional.empty();
-        }
-        return Optional.of(nodes.get(index));
+    /**
+     * Processes XPath query for the given {@code object} passing values of matches to the consumer
+     * as soon as they're found, in document order. Evaluation stops when the consumer returns {@code false}.
+     * <p>
+     * Unlike {@link #process(String, Object)} neither result list nor {@link Optional} is created
+     * and evaluation is always sequential.
+     *
+     * @param xPathQuery XPath query
+     * @param object     an object for which query should be applied
+     * @param consumer   receiver of matching values
+     * @return number of values passed to the consumer
+     */
+    public long evaluate(String xPathQuery, Object object, ResultConsumer consumer) {
+        requireNonNull(xPathQuery, "xPathQuery cannot be null");
+        requireNonNull(object, "object cannot be null");
+        return compile(xPathQuery).evaluate(object, consumer);
     }
 
-    private boolean xPathNodeWithIndex(XPathNode xPathNode) {
-        return xPathNode.type == ANY_NODE_WITH_INDEX || xPathNode.type == NODE_WITH_INDEX;
+    /**
+     * Processes XPath query for the given {@code object} adding values of matches to the collection.
+     *
+     * @param xPathQuery XPath query
+     * @param object     an object for which query should be applied
+     * @param type       expected type of matching values
+     * @param target     collection to which values are added
+     * @return provided collection
+     * @throws ClassCastException if some of matching values is not of expected type
+     * @see #evaluate(String, Object, ResultConsumer)
+     */
+    public <T, C extends Collection<? super T>> C evaluateInto(String xPathQuery, Object object,
+                                                                Class<T> type, C target) {
+        requireNonNull(xPathQuery, "xPathQuery cannot be null");
+        requireNonNull(object, "object cannot be null");
+        return compile(xPathQuery).evaluateInto(object, type, target);
     }
 
-    private boolean xPathNodeWithAttribute(XPathNode xPathNode) {
-        return xPathNode.type == ANY_NODE_WITH_ATTRIBUTE || xPathNode.type == NODE_WITH_ATTRIBUTE;
+    /**
+     * Finds locations of matches of XPath query for the given {@code object}.
+     * Paths of matches are rendered only when {@link Match#getPath()} is called.
+     *
+     * @param xPathQuery XPath query
+     * @param object     an object for which query should be applied
+     * @return matches in document order
+     */
+    public List<Match> locate(String xPathQuery, Object object) {
+        requireNonNull(xPathQuery, "xPathQuery cannot be null");
+        requireNonNull(object, "object cannot be null");
+        return compile(xPathQuery).locate(object);
     }
 
-    private boolean nodeMatchesXpathNode(Node node, XPathNode xPathNode) {
-        if (xPathNodeWithAttribute(xPathNode)) {
-            NodeWithAttribute nodeWithAttribute = (NodeWithAttribute) xPathNode;
-            return nodeHasAttribute(node, nodeWithAttribute.attrName, nodeWithAttribute.attrValue);
-        }
-        return true;
+    /**
+     * Counts matches of XPath query for the given {@code object} (like XPath {@code count()})
+     * without collecting them. Elements of primitive arrays are counted without creating nodes for them.
+     *
+     * @param xPathQuery XPath query
+     * @param object     an object for which query should be applied
+     * @return number of matching nodes
+     */
+    public long count(String xPathQuery, Object object) {
+        requireNonNull(xPathQuery, "xPathQuery cannot be null");
+        requireNonNull(object, "object cannot be null");
+        return compile(xPathQuery).count(object);
     }
 
-    private Optional<String> getFieldValue(String fieldName, Object holder) {
-        try {
-            Object value = ReflectionUtils.getFieldValue(fieldName, holder);
-            return Optional.ofNullable(string(value));
-        } catch (FieldNotFoundError fieldNotFoundError) {
-            return Optional.empty();
-        }
+    /**
+     * Sums numeric values of matches of XPath query for the given {@code object} (like XPath {@code sum()}).
+     * Elements of primitive arrays are read without boxing them.
+     *
+     * @param xPathQuery XPath query
+     * @param object     an object for which query should be applied
+     * @return sum of matching values, {@code 0} if there are no matches
+     * or {@code NaN} if some of values is not a number
+     */
+    public double sum(String xPathQuery, Object object) {
+        requireNonNull(xPathQuery, "xPathQuery cannot be null");
+        requireNonNull(object, "object cannot be null");
+        return compile(xPathQuery).sum(object);
     }
 
-    private void checkXpathExpression(String expression) throws InvalidXPathExpressionError {
-        try {
-            XPathFactory.newInstance().newXPath().compile(expression);
-        } catch (XPathExpressionException e) {
-            throw new InvalidXPathExpressionError(expression);
-        }
+    /**
+     * Describes how XPath query is parsed: type, relationship (child or descendant),
+     * name and predicate of every XPath node, one per line.
+     *
+     * @param xPathQuery XPath query
+     * @return query plan
+     * @throws InvalidXPathExpressionError if provided query is invalid
+     */
+    public String explain(String xPathQuery) {
+        requireNonNull(xPathQuery, "xPathQuery cannot be null");
+        return compile(xPathQuery).explain();
     }
 
-    @SuppressWarnings("CodeBlock2Expr")
-    private List<Node> findAttributeNode(Node node, XPathNode xPathNode) {
-        List<Node> nodes = arrayListOf();
-        for (Node attr : node.attributes) {
-            if (attr.name.equals(xPathNode.name)) {
-                nodes.add(attr);
-            }
-        }
-        if (xPathNode.relationship == NodeRelationship.DESCENDANT) {
-            node.children.forEach(child -> {
-                nodes.addAll(findAttributeNode(child, xPathNode));
-            });
-        }
-        return nodes;
+    /**
+     * Evaluates XPath query for the given {@code object} step by step and measures every XPath node:
+     * number of input nodes, examined candidates, created nodes, field reads, predicate evaluations, matches,
+     * time spent and allocated bytes. Intended for diagnostics, evaluation is slower than regular one
+     * and is not reported to configured {@link OXPyMetrics}.
+     *
+     * @param xPathQuery XPath query
+     * @param object     an object for which query should be applied
+     * @return statistics and results of evaluation ({@link QueryProfile#toString()} renders them as a table)
+     */
+    public QueryProfile profile(String xPathQuery, Object object) {
+        requireNonNull(xPathQuery, "xPathQuery cannot be null");
+        requireNonNull(object, "object cannot be null");
+        return compile(xPathQuery).profile(object);
     }
 
-    private List<Node> findNextNode(Node parent, XPathNode xPathNode) {
-        if (xPathNode.type == PARENT_NODE) {
-            return parent.parent == null ? emptyList() : arrayListOf(parent.parent);
-        }
-        if (xPathNode.type == NODE_ATTRIBUTE) {
-            return findAttributeNode(parent, xPathNode);
+    /**
+     * Evaluates several queries for the given {@code object} in a single traversal.
+     * Queries are merged by their common prefixes, so shared XPath nodes are evaluated once
+     * and every object of the graph is converted into a tree node only once.
+     * Sibling descendant steps without positions (e.g. {@code //gear} and {@code //valve[@id='1']})
+     * share a single search of the subtree, while positional steps search it separately.
+     * <p>
+     * A query provided several times (the same {@link CompiledQuery} instance) is evaluated once
+     * and has a single entry in the result.
+     *
+     * @param queries compiled queries
+     * @param object  an object for which queries should be applied
+     * @return processing result of every distinct query (see {@link #process(String, Object)})
+     * in the order the queries were first provided
+     */
+    public Map<CompiledQuery, Optional<Object>> evaluateAll(Collection<CompiledQuery> queries, Object object) {
+        requireNonNull(queries, "queries cannot be null");
+        requireNonNull(object, "object cannot be null");
+        queries.forEach(query -> requireNonNull(query, "query cannot be null"));
+        List<CompiledQuery> queryList = new ArrayList<>(new LinkedHashSet<>(queries));
+        Traversal traversal = Traversal.start(config);
+        List<List<Node>> matches = QueryTrie.of(queryList)
+                .evaluate(Node.root(object, traversal), queryList.size());
+        Map<CompiledQuery, Optional<Object>> result = new LinkedHashMap<>();
+        long matchCount = 0;
+        for (int i = 0; i < queryList.size(); i++) {
+            result.put(queryList.get(i), toResult(matches.get(i)));
+            matchCount += matches.get(i).size();
         }
-        List<Node> nodes = arrayListOf();
-        for (Node child : parent.children) {
-            if (anyXpathNode(xPathNode)) {
-                nodes.add(child);
-            } else if (child.name.equals(xPathNode.name)) {
-                nodes.add(child);
-            }
-            if (xPathNode.relationship == NodeRelationship.DESCENDANT) {
-                nodes.addAll(findNextNode(child, xPathNode));
-            }
+        if (traversal.isRecording()) {
+            traversal.complete(queryList.stream().map(CompiledQuery::getQuery).collect(Collectors.joining(" | ")),
+                    object, matchCount);
         }
-        return nodes;
+        return result;
     }
 
-    private boolean anyXpathNode(XPathNode xPathNode) {
-        return xPathNode.type == ANY_NODE_WITH_ATTRIBUTE
-                || xPathNode.type == ANY_NODE_WITH_INDEX
-                || xPathNode.type == ANY_NODE;
+    /**
+     * Builds an index of the whole object tree which can be queried many times
+     * without converting the object into a tree again.
+     * Descendant XPath nodes are evaluated by index lookups instead of subtree scans.
+     *
+     * @param object an object to index, it's expected not to change while the index is used
+     * @return immutable thread-safe index
+     * @throws EvaluationLimitExceededError if the tree exceeds one of limits configured by {@link OXPyConfig}
+     */
+    public ObjectIndex index(Object object) {
+        requireNonNull(object, "object cannot be null");
+        Object event = FlightRecorderEvents.beginTreeBuild();
+        ObjectIndex index = new ObjectIndex(this, Node.root(object, Traversal.unreported(config)),
+                config.getAttributeIndexThreshold());
+        FlightRecorderEvents.commitTreeBuild(event, object, index.getElementCount() + index.getAttributeCount());
+        return index;
     }
 
     /**
-     * Creates a 'tree' from an object.
+     * Processes XPath query for every object of the collection in parallel
+     * using configured {@link OXPyConfig#getForkJoinPool() pool}.
+     * Query is compiled once and shared by all workers.
      *
-     * @param object an object for which a tree will created
-     * @return tree root node
+     * @param xPathQuery XPath query
+     * @param objects    objects for which query should be applied
+     * @return processing result of every object (see {@link #process(String, Object)})
+     * in the same order as objects
      */
-    private Node objectToTree(Object object) {
-        Node root = new Node();
-        root.name = getNameFor(object);
-        root.value = object;
-        root.path = "/" + root.name;
-        if (isPrimitive(object)) {
-            return root;
-        }
-        if (isMap(object)) {
-            processMapNode(root);
-            return root;
-        }
-        if (isCollection(object)) {
-            processCollectionNode(root);
-            return root;
-        }
-        processNodeFields(getAllFieldsOf(object), root);
-        return root;
-    }
-
-    private Node toNode(Node parent, Object value, String name, Integer index) {
-        Node node = new Node();
-        node.name = name;
-        node.value = value;
-        node.path = index == null
-                ? parent.path + "/" + name
-                : parent.path + "/" + name + "[" + index + "]";
-        node.parent = parent;
-        if (null == value || isPrimitive(value)) {
-            return node;
-        }
-        if (isMap(value)) {
-            processMapNode(node);
-            return node;
-        }
-        if (isCollection(value)) {
-            processCollectionNode(node);
-            return node;
-        }
-        processNodeFields(getAllFieldsOf(value.getClass()), node);
-        return node;
+    public List<Optional<Object>> processAll(String xPathQuery, Collection<?> objects) {
+        requireNonNull(objects, "objects cannot be null");
+        return processAll(xPathQuery, objects.spliterator());
     }
 
-    private void processCollectionNode(Node node) {
-        Collection collection = (Collection) node.value;
-        if (collection.isEmpty()) {
-            return;
-        }
-        node.children = new ArrayList<>(collection.size());
+    /**
+     * Processes XPath query for every object provided by the spliterator in parallel.
+     * Work is split according to {@link Spliterator#trySplit()}.
+     *
+     * @param xPathQuery XPath query
+     * @param objects    spliterator over objects for which query should be applied
+     * @return processing result of every object in encounter order
+     * @see #processAll(String, Collection)
+     */
+    public List<Optional<Object>> processAll(String xPathQuery, Spliterator<?> objects) {
+        requireNonNull(xPathQuery, "xPathQuery cannot be null");
+        requireNonNull(objects, "objects cannot be null");
+        return compile(xPathQuery).evaluateAll(objects);
+    }
 
-        Iterator iterator = collection.iterator();
-        Object element = null;
-        while (iterator.hasNext()) {
-            element = iterator.next();
-            if (element != null) {
-                break;
-            }
-        }
-        if (element == null) { //all items are null
-            return;
-        }
+    /**
+     * Evaluates compiled query for the given {@code object} step by step.
+     */
+    QueryProfile profile(CompiledQuery query, Object object) {
+        return QueryProfile.run(query, Node.root(object, Traversal.profiling(config)));
+    }
 
-        //todo check that all items in collection are of the same type
-        String itemName = isPrimitive(element)
-                ? "item"
-                : getNameFor(element);
+    /**
+     * Evaluates compiled query for every object in parallel preserving encounter order.
+     */
+    List<Optional<Object>> evaluateAll(CompiledQuery query, Spliterator<?> objects) {
+        Stream<Optional<Object>> results = StreamSupport.stream(objects, true)
+                .map(object -> evaluate(query, requireNonNull(object, "object cannot be null"), Integer.MAX_VALUE));
+        //parallel stream started from a pool's task is executed by that pool
+        return config.getForkJoinPool()
+                .submit(() -> results.collect(Collectors.toList()))
+                .join();
+    }
 
-        int i = 1;
-        for (Object item : collection) {
-            if (item != null) {
-                node.children.add(toNode(node, item, itemName, i++));
-            }
-        }
+    /**
+     * Creates a lazy iterator over matches of compiled query for the object tree.
+     */
+    private static Iterator<Node> matches(CompiledQuery query, Node root) {
+        return new MatchIterator(query.getXPathNodes(), root);
     }
 
-    private void processMapNode(Node node) {
-        //todo map key type (string or number)
-        Map map = (Map) node.value;
-        if (map.size() > 0) {
-            node.children = new ArrayList<>(map.size());
+    /**
+     * Evaluates compiled query for the given {@code object}.
+     */
+    Optional<Object> evaluate(CompiledQuery query, Object object, int limit) {
+        Traversal traversal = Traversal.start(config);
+        Node root = Node.root(object, traversal);
+        List<Node> result;
+        if (config.isParallelEvaluation() && limit == Integer.MAX_VALUE) {
+            result = new ParallelEvaluation(query.getXPathNodes(), config.getForkJoinPool(),
+                    config.getParallelThreshold()).evaluate(root);
+        } else {
+            result = collect(matches(query, root), limit);
         }
-        //todo do not use stream here for performance reasons? (iterator instead)
-        map.keySet().stream().findFirst().ifPresent(key -> {
-            if (isPrimitive(key)) {
-                map.entrySet().forEach(entry -> {
-                    Map.Entry<Comparable, Object> _entry = (Map.Entry<Comparable, Object>) entry;
-                    node.children.add(toNode(node, _entry.getValue(), string(_entry.getKey()), null));
-                });
-            }
-        });
+        traversal.complete(query.getQuery(), object, result.size());
+        return toResult(result);
     }
 
-    private void processNodeFields(List<Field> fields, Node node) {
-        List<Field> attributes = arrayListOf();
-        fields.removeIf(field -> {
-            if (isPrimitive(field)) {
-                attributes.add(field);
-                return true;
-            }
-            return false;
-        });
-        node.attributes = transformList(attributes, field
-                -> toNode(node, ReflectionUtils.getFieldValue(field, node.value), field.getName(), null));
-        node.children = transformList(fields, field
-                -> toNode(node, ReflectionUtils.getFieldValue(field, node.value), field.getName(), null));
+    /**
+     * Evaluates compiled query for the given {@code object} stopping at the first match.
+     */
+    Optional<Object> evaluateFirst(CompiledQuery query, Object object) {
+        Traversal traversal = Traversal.start(config);
+        Iterator<Node> matches = matches(query, Node.root(object, traversal));
+        Optional<Object> result = matches.hasNext() ? Optional.ofNullable(matches.next().value) : Optional.empty();
+        traversal.complete(query.getQuery(), object, result.isPresent() ? 1 : 0);
+        return result;
     }
 
-    //TODO allow to customize primitive types?
-    private static boolean isPrimitive(Field field) {
-        Class type = field.getType();
-        return type.isPrimitive() || primitiveTypes.contains(type);
+    /**
+     * Passes values of matches of compiled query to the consumer until it returns {@code false}.
+     */
+    long evaluate(CompiledQuery query, Object object, ResultConsumer consumer) {
+        Traversal traversal = Traversal.start(config);
+        Iterator<Node> matches = matches(query, Node.root(object, traversal));
+        long count = 0;
+        while (matches.hasNext()) {
+            count++;
+            if (!consumer.accept(matches.next().value)) {
+                break;
+            }
+        }
+        traversal.complete(query.getQuery(), object, count);
+        return count;
     }
 
-    //TODO allow to customize primitive types?
-    private static boolean isPrimitive(Object object) {
-        Class type = object.getClass();
-        return type.isPrimitive() || primitiveTypes.contains(type);
+    /**
+     * Finds locations of matches of compiled query for the given {@code object}.
+     */
+    List<Match> locate(CompiledQuery query, Object object) {
+        Traversal traversal = Traversal.start(config);
+        List<Match> result = new ArrayList<>();
+        matches(query, Node.root(object, traversal)).forEachRemaining(node -> result.add(new Match(node)));
+        traversal.complete(query.getQuery(), object, result.size());
+        return result;
     }
 
     /**
-     * Gets a name for an object based on it's class name.
+     * Counts ({@code sum} is {@code false}) or sums matches of compiled query for the given {@code object}.
      */
-    private String getNameFor(Object object) {
-        String name = object.getClass().getSimpleName();
-        return name.substring(0, 1).toLowerCase() + name.substring(1);
+    double aggregate(CompiledQuery query, Object object, boolean sum) {
+        Traversal traversal = Traversal.start(config);
+        Node root = Node.root(object, traversal);
+        List<XPathNode> xPathNodes = query.getXPathNodes();
+        int last = xPathNodes.size() - 1;
+        Iterator<Node> contexts = last == 0
+                ? Collections.singletonList(root).iterator()
+                : new MatchIterator(xPathNodes.subList(0, last), root);
+        Aggregates aggregates = new Aggregates(sum).aggregate(contexts, xPathNodes.get(last));
+        traversal.complete(query.getQuery(), object, aggregates.matches);
+        return aggregates.result;
     }
 
     /**
-     * Converts some object to a string.
+     * Collects up to {@code limit} matches.
      */
-    private String string(Object object) {
-        return object == null ? null : String.valueOf(object);
+    static List<Node> collect(Iterator<Node> matches, int limit) {
+        List<Node> result = arrayListOf();
+        while (result.size() < limit && matches.hasNext()) {
+            result.add(matches.next());
+        }
+        return result;
     }
 
     /**
-     * Represents object tree node.
+     * Converts matching nodes into processing result:
+     * nothing, a single value or a list of values.
      */
-    private class Node {
-        Node parent;
-        String name;
-        String path; //todo remove path field? as it is never used
-        Object value;
-        List<Node> attributes = emptyList();
-        List<Node> children = emptyList();
-
-        @Override
-        public String toString() {
-            return path;
+    static Optional<Object> toResult(List<Node> result) {
+        if (result.size() == 0) {
+            return Optional.empty();
+        }
+        if (result.size() == 1) {
+            return Optional.ofNullable(result.get(0).value);
+        }
+        return Optional.of(
+                result.stream()
+                        .map(node -> node.value)
+                        .collect(Collectors.toList())
+        );
+    }
+
+    Stream<Object> stream(CompiledQuery query, Object object) {
+        Iterator<Node> matches = matches(query, Node.root(object, Traversal.unreported(config)));
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(matches, Spliterator.ORDERED), false)
+                .map(node -> node.value);
+    }
+
+    private void checkXpathExpression(String expression) throws InvalidXPathExpressionError {
+        try {
+            //names of map entries with numeric keys (e.g. '/1') are not valid XML names, they're prefixed for validation
+            xPathValidator.get().compile(NUMERIC_STEP.matcher(expression).replaceAll("_"));
+        } catch (XPathExpressionException e) {
+            throw new InvalidXPathExpressionError(expression);
         }
     }
 }
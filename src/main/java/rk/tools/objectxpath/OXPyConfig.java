@@ -0,0 +1,209 @@
+package rk.tools.objectxpath;
+
+import rk.tools.objectxpath.exception.EvaluationLimitExceededError;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Configuration of {@link OXPy}.
+ * <p>
+ * {@link OXPy} copies configuration on creation,
+ * so changing an instance afterwards does not affect already created processors.
+ * <p>
+ * Evaluation limits ({@link #maxDepth(int)}, {@link #maxNodes(long)}, {@link #timeLimit(long, TimeUnit)})
+ * are checked while object tree nodes are created. {@link OXPy#index(Object)} creates the whole tree at once,
+ * so for an {@link ObjectIndex} they limit building the index, while its queries are not limited.
+ */
+public class OXPyConfig {
+    public static final int DEFAULT_QUERY_CACHE_SIZE = 512;
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 1024;
+
+    private int queryCacheSize = DEFAULT_QUERY_CACHE_SIZE;
+    private boolean validateQueries = true;
+    private ForkJoinPool forkJoinPool = ForkJoinPool.commonPool();
+    private boolean parallelEvaluation;
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    private int maxDepth = Integer.MAX_VALUE;
+    private long maxNodes = Long.MAX_VALUE;
+    private long timeLimitNanos = Long.MAX_VALUE;
+    private int attributeIndexThreshold;
+    private OXPyMetrics metrics = OXPyMetrics.NONE;
+
+    public OXPyConfig() {
+    }
+
+    OXPyConfig(OXPyConfig config) {
+        this.queryCacheSize = config.queryCacheSize;
+        this.validateQueries = config.validateQueries;
+        this.forkJoinPool = config.forkJoinPool;
+        this.parallelEvaluation = config.parallelEvaluation;
+        this.parallelThreshold = config.parallelThreshold;
+        this.maxDepth = config.maxDepth;
+        this.maxNodes = config.maxNodes;
+        this.timeLimitNanos = config.timeLimitNanos;
+        this.attributeIndexThreshold = config.attributeIndexThreshold;
+        this.metrics = config.metrics;
+    }
+
+    public int getQueryCacheSize() {
+        return queryCacheSize;
+    }
+
+    /**
+     * Sets max number of compiled queries kept in {@link QueryCache}.
+     * {@code 0} disables caching.
+     */
+    public OXPyConfig queryCacheSize(int queryCacheSize) {
+        if (queryCacheSize < 0) {
+            throw new IllegalArgumentException("queryCacheSize cannot be negative");
+        }
+        this.queryCacheSize = queryCacheSize;
+        return this;
+    }
+
+    public boolean isValidateQueries() {
+        return validateQueries;
+    }
+
+    /**
+     * Enables or disables validation of queries by JDK XPath compiler.
+     * Disabling it makes compilation cheaper,
+     * queries which OXPy parser does not support are rejected anyway.
+     */
+    public OXPyConfig validateQueries(boolean validateQueries) {
+        this.validateQueries = validateQueries;
+        return this;
+    }
+
+    public ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+
+    /**
+     * Sets a pool used for parallel evaluation
+     * (by default {@link ForkJoinPool#commonPool()} is used).
+     */
+    public OXPyConfig forkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = requireNonNull(forkJoinPool, "forkJoinPool cannot be null");
+        return this;
+    }
+
+    public boolean isParallelEvaluation() {
+        return parallelEvaluation;
+    }
+
+    /**
+     * Enables parallel evaluation of a query for a single object
+     * (used by {@link OXPy#process(String, Object)} and {@link CompiledQuery#evaluate(Object)}).
+     * Children of nodes with more than {@link #parallelThreshold(int) threshold} children are
+     * processed by fork/join tasks of configured {@link #forkJoinPool(ForkJoinPool) pool}.
+     */
+    public OXPyConfig parallelEvaluation(boolean parallelEvaluation) {
+        this.parallelEvaluation = parallelEvaluation;
+        return this;
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Sets min number of children a node should have to be processed in parallel.
+     */
+    public OXPyConfig parallelThreshold(int parallelThreshold) {
+        if (parallelThreshold < 1) {
+            throw new IllegalArgumentException("parallelThreshold must be positive");
+        }
+        this.parallelThreshold = parallelThreshold;
+        return this;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Sets max depth of object tree nodes visited by a single evaluation (root node depth is {@code 0}),
+     * evaluation which has to go deeper fails with {@link EvaluationLimitExceededError}.
+     * Unlimited by default.
+     */
+    public OXPyConfig maxDepth(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth cannot be negative");
+        }
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    public long getMaxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * Sets max number of object tree nodes (elements and attributes) created by a single evaluation,
+     * evaluation which needs more fails with {@link EvaluationLimitExceededError}.
+     * Size of a collection, map or array is checked against the remaining budget before nodes are created
+     * for its items ({@code null} items are counted), so huge collections fail fast.
+     * Unlimited by default.
+     */
+    public OXPyConfig maxNodes(long maxNodes) {
+        if (maxNodes < 1) {
+            throw new IllegalArgumentException("maxNodes must be positive");
+        }
+        this.maxNodes = maxNodes;
+        return this;
+    }
+
+    public long getTimeLimitNanos() {
+        return timeLimitNanos;
+    }
+
+    /**
+     * Sets max time of a single evaluation, evaluation which takes longer
+     * fails with {@link EvaluationLimitExceededError}. Unlimited by default.
+     * <p>
+     * Time is checked when object tree nodes are expanded,
+     * for streams it's counted from the moment the stream is created.
+     */
+    public OXPyConfig timeLimit(long timeLimit, TimeUnit unit) {
+        if (timeLimit < 1) {
+            throw new IllegalArgumentException("timeLimit must be positive");
+        }
+        this.timeLimitNanos = requireNonNull(unit, "unit cannot be null").toNanos(timeLimit);
+        return this;
+    }
+
+    public int getAttributeIndexThreshold() {
+        return attributeIndexThreshold;
+    }
+
+    /**
+     * Sets number of times an equality predicate (e.g. {@code gear[@id='112']}) is evaluated
+     * for an {@link ObjectIndex} before a hash index is built for it automatically.
+     * {@code 0} (default) disables automatic hash indexes,
+     * they can still be created by {@link ObjectIndex#indexAttribute(String, String)}.
+     */
+    public OXPyConfig attributeIndexThreshold(int attributeIndexThreshold) {
+        if (attributeIndexThreshold < 0) {
+            throw new IllegalArgumentException("attributeIndexThreshold cannot be negative");
+        }
+        this.attributeIndexThreshold = attributeIndexThreshold;
+        return this;
+    }
+
+    public OXPyMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets a listener of query compilation and evaluation (e.g. {@link CountingMetrics}).
+     * By default ({@link OXPyMetrics#NONE}) evaluation statistics are not collected.
+     */
+    public OXPyConfig metrics(OXPyMetrics metrics) {
+        this.metrics = requireNonNull(metrics, "metrics cannot be null");
+        return this;
+    }
+}
@@ -0,0 +1,121 @@
+package rk.tools.objectxpath;
+
+/**
+ * Listener of query compilation and evaluation which can be used to export metrics
+ * into a metrics registry (see {@link CountingMetrics}).
+ * <p>
+ * Methods are called by threads compiling and evaluating queries, so implementations
+ * have to be thread-safe and fast. All methods do nothing by default.
+ * When {@link #NONE} is configured (default) evaluation statistics are not collected at all.
+ * <p>
+ * Evaluations of lazy streams are not reported. Queries of an {@link ObjectIndex} are not reported
+ * either (nor recorded as JDK Flight Recorder events), they only look up nodes created when the index was built.
+ *
+ * @see OXPyConfig#metrics(OXPyMetrics)
+ */
+public interface OXPyMetrics {
+
+    /**
+     * Listener which ignores everything.
+     */
+    OXPyMetrics NONE = new OXPyMetrics() {
+    };
+
+    /**
+     * Called when a query is validated and parsed (on cache miss).
+     *
+     * @param query      XPath query
+     * @param parseNanos time spent on validation and parsing
+     */
+    default void queryParsed(String query, long parseNanos) {
+    }
+
+    /**
+     * Called when a compiled query is found in {@link QueryCache}.
+     */
+    default void cacheHit(String query) {
+    }
+
+    /**
+     * Called when a query is not found in {@link QueryCache} (or caching is disabled).
+     */
+    default void cacheMiss(String query) {
+    }
+
+    /**
+     * Called when an evaluation completes successfully.
+     */
+    default void evaluated(Evaluation evaluation) {
+    }
+
+    /**
+     * Statistics of a single evaluation.
+     */
+    final class Evaluation {
+        private final String query;
+        private final long traversalNanos;
+        private final long nodes;
+        private final long fieldReads;
+        private final long predicateEvaluations;
+        private final long results;
+
+        Evaluation(String query, long traversalNanos, long nodes, long fieldReads,
+                   long predicateEvaluations, long results) {
+            this.query = query;
+            this.traversalNanos = traversalNanos;
+            this.nodes = nodes;
+            this.fieldReads = fieldReads;
+            this.predicateEvaluations = predicateEvaluations;
+            this.results = results;
+        }
+
+        /**
+         * @return evaluated XPath query (queries evaluated together are joined by {@code |})
+         */
+        public String getQuery() {
+            return query;
+        }
+
+        /**
+         * @return time spent on traversing the object tree
+         */
+        public long getTraversalNanos() {
+            return traversalNanos;
+        }
+
+        /**
+         * @return number of object tree nodes created (visited) by the evaluation, including the root
+         */
+        public long getNodes() {
+            return nodes;
+        }
+
+        /**
+         * @return number of values read from object fields by reflection
+         */
+        public long getFieldReads() {
+            return fieldReads;
+        }
+
+        /**
+         * @return number of predicates checked for candidate nodes
+         */
+        public long getPredicateEvaluations() {
+            return predicateEvaluations;
+        }
+
+        /**
+         * @return number of matches (for {@code count()} and {@code sum()} number of aggregated matches)
+         */
+        public long getResults() {
+            return results;
+        }
+
+        @Override
+        public String toString() {
+            return "Evaluation{query=" + query + ", traversalNanos=" + traversalNanos + ", nodes=" + nodes
+                    + ", fieldReads=" + fieldReads + ", predicateEvaluations=" + predicateEvaluations
+                    + ", results=" + results + "}";
+        }
+    }
+}
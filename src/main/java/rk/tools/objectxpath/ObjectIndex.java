@@ -0,0 +1,335 @@
+package rk.tools.objectxpath;
+
+import rk.tools.objectxpath.xpath.NodeRelationship;
+import rk.tools.objectxpath.xpath.NodeWithAttribute;
+import rk.tools.objectxpath.xpath.XPathNodeType;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Snapshot of an object tree built once and reused by any number of queries.
+ * <p>
+ * The whole tree is expanded on creation, every element is numbered in document order
+ * and elements and attributes are put into posting lists by name,
+ * so descendant XPath nodes ({@code //name}, {@code //*}, {@code //@name}) are evaluated
+ * by a binary search in a posting list instead of a subtree scan.
+ * <p>
+ * Equality predicates ({@code name[@attr='value']}) can be evaluated by hash indexes keyed by
+ * element name, attribute name and attribute value. Such indexes are created by
+ * {@link #indexAttribute(String, String)} or automatically after a predicate is evaluated
+ * {@link OXPyConfig#attributeIndexThreshold(int) several times}.
+ * <p>
+ * Evaluation limits of {@link OXPyConfig} apply to building the index, queries of the index are neither limited
+ * nor reported to {@link OXPyMetrics}.
+ * <p>
+ * Indexed objects are expected not to change: modifications made after the index is created are not visible.
+ * Instances are immutable and can be safely shared between threads.
+ * Use {@link OXPy#index(Object)} to create one.
+ */
+public class ObjectIndex {
+    /**
+     * Estimated shallow sizes (in bytes, compressed references) used by {@link #getMemoryFootprint()}.
+     */
+    private static final int NODE_SIZE = 56;
+    private static final int ARRAY_HEADER_SIZE = 16;
+    private static final int REFERENCE_SIZE = 4;
+    private static final int LIST_SIZE = 24;
+    private static final int MAP_ENTRY_SIZE = 32;
+    /**
+     * Element name of hash indexes used for any element ({@code *}).
+     */
+    private static final String ANY_ELEMENT = "*";
+
+    private final OXPy oxpy;
+    private final Node root;
+    /**
+     * All elements in document order, position in the array is {@link Node#order}.
+     */
+    private final Node[] elements;
+    private final Map<String, Node[]> elementsByName;
+    /**
+     * Attributes are ordered by their elements' order.
+     */
+    private final Map<String, Node[]> attributesByName;
+    private final int attributeCount;
+    private final ConcurrentMap<AttributeKey, Map<String, Node[]>> attributeIndexes = new ConcurrentHashMap<>();
+    /**
+     * Number of times a predicate without hash index was evaluated, used only for automatic indexes.
+     */
+    private final ConcurrentMap<AttributeKey, AtomicInteger> attributeUses = new ConcurrentHashMap<>();
+    private final int attributeIndexThreshold;
+
+    ObjectIndex(OXPy oxpy, Node root, int attributeIndexThreshold) {
+        this.oxpy = oxpy;
+        this.root = root;
+        this.attributeIndexThreshold = attributeIndexThreshold;
+        List<Node> elements = new ArrayList<>();
+        Map<String, List<Node>> elementsByName = new HashMap<>();
+        Map<String, List<Node>> attributesByName = new HashMap<>();
+        int attributeCount = 0;
+        Iterator<Node> nodes = NodeIterators.selfAndDescendants(root, node -> true);
+        while (nodes.hasNext()) {
+            Node node = nodes.next();
+            node.order = elements.size();
+            elements.add(node);
+            elementsByName.computeIfAbsent(node.name, name -> new ArrayList<>()).add(node);
+            for (Node attribute : node.attributes()) {
+                attribute.order = node.order;
+                attribute.subtreeEnd = -1; //attributes have neither attributes nor children
+                attributesByName.computeIfAbsent(attribute.name, name -> new ArrayList<>()).add(attribute);
+                attributeCount++;
+            }
+        }
+        this.elements = elements.toArray(new Node[0]);
+        //children are numbered after their parent, so processing in reverse order sees children first
+        for (int i = this.elements.length - 1; i >= 0; i--) {
+            Node node = this.elements[i];
+            List<Node> children = node.children();
+            node.subtreeEnd = children.isEmpty() ? node.order : children.get(children.size() - 1).subtreeEnd;
+        }
+        this.elementsByName = toArrays(elementsByName);
+        this.attributesByName = toArrays(attributesByName);
+        this.attributeCount = attributeCount;
+    }
+
+    private static Map<String, Node[]> toArrays(Map<String, List<Node>> lists) {
+        Map<String, Node[]> arrays = new HashMap<>(lists.size() * 4 / 3 + 1);
+        lists.forEach((name, nodes) -> arrays.put(name, nodes.toArray(new Node[0])));
+        return arrays;
+    }
+
+    /**
+     * Processes XPath query for indexed object.
+     *
+     * @param xPathQuery XPath query
+     * @return query processing result (see {@link OXPy#process(String, Object)})
+     */
+    public Optional<Object> process(String xPathQuery) {
+        requireNonNull(xPathQuery, "xPathQuery cannot be null");
+        return evaluate(oxpy.compile(xPathQuery));
+    }
+
+    /**
+     * Evaluates compiled query for indexed object.
+     *
+     * @param query compiled query
+     * @return query processing result (see {@link OXPy#process(String, Object)})
+     */
+    public Optional<Object> evaluate(CompiledQuery query) {
+        requireNonNull(query, "query cannot be null");
+        return OXPy.toResult(OXPy.collect(new MatchIterator(query.getXPathNodes(), root, this), Integer.MAX_VALUE));
+    }
+
+    /**
+     * Creates a hash index for equality predicates on provided attribute of provided elements
+     * (e.g. {@code gear[@id='112']}), does nothing if such index already exists.
+     *
+     * @param elementName element name or {@code *} for predicates of any element
+     * @param attrName    attribute name
+     * @return this index
+     */
+    public ObjectIndex indexAttribute(String elementName, String attrName) {
+        requireNonNull(elementName, "elementName cannot be null");
+        requireNonNull(attrName, "attrName cannot be null");
+        attributeIndexes.computeIfAbsent(new AttributeKey(elementName, attrName), this::buildAttributeIndex);
+        return this;
+    }
+
+    /**
+     * @return {@code true} if there is a hash index for provided attribute of provided elements
+     * @see #indexAttribute(String, String)
+     */
+    public boolean hasAttributeIndex(String elementName, String attrName) {
+        return attributeIndexes.containsKey(new AttributeKey(elementName, attrName));
+    }
+
+    /**
+     * @return indexed object
+     */
+    public Object getRoot() {
+        return root.value;
+    }
+
+    /**
+     * @return number of indexed elements (including the root)
+     */
+    public int getElementCount() {
+        return elements.length;
+    }
+
+    /**
+     * @return number of indexed attributes
+     */
+    public int getAttributeCount() {
+        return attributeCount;
+    }
+
+    /**
+     * Estimates memory taken by the index (tree nodes, their lists and posting lists),
+     * indexed objects themselves are not included.
+     *
+     * @return estimated size in bytes
+     */
+    public long getMemoryFootprint() {
+        long nodes = (long) elements.length + attributeCount;
+        long size = nodes * NODE_SIZE;
+        //attributes and children lists of elements, every node is referenced from one of them
+        size += (long) elements.length * 2 * (LIST_SIZE + ARRAY_HEADER_SIZE) + nodes * REFERENCE_SIZE;
+        size += ARRAY_HEADER_SIZE + (long) elements.length * REFERENCE_SIZE;
+        size += postingListsSize(elementsByName) + postingListsSize(attributesByName);
+        for (Map<String, Node[]> attributeIndex : attributeIndexes.values()) {
+            size += MAP_ENTRY_SIZE + postingListsSize(attributeIndex);
+            for (String value : attributeIndex.keySet()) {
+                size += ARRAY_HEADER_SIZE + 2L * value.length() + LIST_SIZE; //string with its array
+            }
+        }
+        return size;
+    }
+
+    private static long postingListsSize(Map<String, Node[]> postingLists) {
+        long size = ARRAY_HEADER_SIZE + (long) postingLists.size() * (MAP_ENTRY_SIZE + REFERENCE_SIZE);
+        for (Node[] nodes : postingLists.values()) {
+            size += ARRAY_HEADER_SIZE + (long) nodes.length * REFERENCE_SIZE;
+        }
+        return size;
+    }
+
+    /**
+     * Finds descendants of a node (not including the node itself) in document order.
+     *
+     * @param name element name or {@code null} for any element
+     */
+    Iterator<Node> descendants(Node node, String name) {
+        if (name == null) {
+            return range(elements, node.order + 1, node.subtreeEnd);
+        }
+        Node[] nodes = elementsByName.get(name);
+        return nodes == null ? Collections.emptyIterator() : range(nodes, node.order + 1, node.subtreeEnd);
+    }
+
+    /**
+     * Finds attributes of a node and its descendants in document order.
+     */
+    Iterator<Node> attributes(Node node, String name) {
+        Node[] nodes = attributesByName.get(name);
+        return nodes == null ? Collections.emptyIterator() : range(nodes, node.order, node.subtreeEnd);
+    }
+
+    /**
+     * Finds elements matching XPath node with attribute predicate using a hash index.
+     *
+     * @return matching elements in document order
+     * or {@code null} if there is no hash index for the predicate
+     */
+    Iterator<Node> elementsWithAttribute(Node context, NodeWithAttribute xPathNode) {
+        AttributeKey key = new AttributeKey(
+                xPathNode.type == XPathNodeType.ANY_NODE_WITH_ATTRIBUTE ? ANY_ELEMENT : xPathNode.name,
+                xPathNode.attrName);
+        Map<String, Node[]> attributeIndex = attributeIndexes.get(key);
+        if (attributeIndex == null) {
+            if (attributeIndexThreshold == 0
+                    || attributeUses.computeIfAbsent(key, _key -> new AtomicInteger()).incrementAndGet()
+                    < attributeIndexThreshold) {
+                return null;
+            }
+            attributeIndex = attributeIndexes.computeIfAbsent(key, this::buildAttributeIndex);
+        }
+        Node[] nodes = attributeIndex.get(String.valueOf(xPathNode.attrValue));
+        if (nodes == null) {
+            return Collections.emptyIterator();
+        }
+        Iterator<Node> descendants = range(nodes, context.order + 1, context.subtreeEnd);
+        return xPathNode.relationship == NodeRelationship.DESCENDANT
+                ? descendants
+                : NodeIterators.filter(descendants, node -> node.parent == context);
+    }
+
+    /**
+     * Groups elements with provided name by string value of provided attribute.
+     */
+    private Map<String, Node[]> buildAttributeIndex(AttributeKey key) {
+        Node[] nodes = key.elementName.equals(ANY_ELEMENT) ? elements : elementsByName.get(key.elementName);
+        Map<String, List<Node>> nodesByValue = new HashMap<>();
+        if (nodes != null) {
+            for (Node node : nodes) {
+                String value = MatchIterator.attributeValue(node, key.attrName);
+                if (value != null) {
+                    nodesByValue.computeIfAbsent(value, _value -> new ArrayList<>()).add(node);
+                }
+            }
+        }
+        return toArrays(nodesByValue);
+    }
+
+    /**
+     * Selects nodes with order from {@code from} to {@code to} (inclusive) from a posting list.
+     */
+    private static Iterator<Node> range(Node[] nodes, int from, int to) {
+        int start = lowerBound(nodes, from);
+        int end = lowerBound(nodes, to + 1);
+        return start >= end
+                ? Collections.emptyIterator()
+                : Arrays.asList(nodes).subList(start, end).iterator();
+    }
+
+    /**
+     * @return index of the first node with order not less than provided one
+     */
+    private static int lowerBound(Node[] nodes, int order) {
+        int low = 0;
+        int high = nodes.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (nodes[middle].order < order) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public String toString() {
+        return "ObjectIndex{elements=" + elements.length + ", attributes=" + attributeCount
+                + ", names=" + elementsByName.size() + ", attributeNames=" + attributesByName.size()
+                + ", attributeIndexes=" + attributeIndexes.keySet() + "}";
+    }
+
+    private static final class AttributeKey {
+        final String elementName;
+        final String attrName;
+
+        AttributeKey(String elementName, String attrName) {
+            this.elementName = elementName;
+            this.attrName = attrName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof AttributeKey)) {
+                return false;
+            }
+            AttributeKey that = (AttributeKey) o;
+            return elementName.equals(that.elementName) && attrName.equals(that.attrName);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * elementName.hashCode() + attrName.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return elementName + "[@" + attrName + "]";
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package rk.tools.objectxpath;
+
+import rk.tools.objectxpath.xpath.NodeRelationship;
+import rk.tools.objectxpath.xpath.XPathNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Evaluates XPath nodes for a single object tree using fork/join tasks.
+ * <p>
+ * When an element XPath node is evaluated for a context node with more children than the threshold,
+ * children (together with their subtrees for descendant search) are split between tasks.
+ * Partial results are concatenated in the order of children, so matches are in document order,
+ * the same as in sequential {@link MatchIterator}.
+ */
+class ParallelEvaluation {
+    private final List<XPathNode> xPathNodes;
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    ParallelEvaluation(List<XPathNode> xPathNodes, ForkJoinPool pool, int threshold) {
+        this.xPathNodes = xPathNodes;
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    List<Node> evaluate(Node root) {
+        if (xPathNodes.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return pool.invoke(ForkJoinTask.adapt(() -> evaluate(root, 0)));
+    }
+
+    /**
+     * Evaluates XPath nodes starting at {@code step} for provided context node.
+     */
+    private List<Node> evaluate(Node context, int step) {
+        XPathNode xPathNode = xPathNodes.get(step);
+        List<Node> result = new ArrayList<>();
+        if (!splittable(xPathNode) || MatchIterator.selectsDirectly(context, xPathNode)) {
+            Iterator<Node> matches = MatchIterator.select(context, xPathNode);
+            while (matches.hasNext()) {
+                addResults(matches.next(), step, result);
+            }
+            return result;
+        }
+        if (xPathNode.relationship == NodeRelationship.DESCENDANT) {
+            processDescendants(context, step, result);
+        } else if (!processChildrenInParallel(context, step, result)) {
+            for (Node child : context.children()) {
+                processChild(child, step, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks a child of a context node against element XPath node
+     * and for descendant search continues with the child's subtree.
+     */
+    private void processChild(Node child, int step, List<Node> result) {
+        if (MatchIterator.matches(child, xPathNodes.get(step))) {
+            addResults(child, step, result);
+        }
+        if (xPathNodes.get(step).relationship == NodeRelationship.DESCENDANT) {
+            processDescendants(child, step, result);
+        }
+    }
+
+    /**
+     * Checks descendants of a node against descendant XPath node in document order.
+     * Uses an explicit stack, so deep trees do not overflow the thread's stack,
+     * only children of wide nodes are handed over to tasks.
+     */
+    private void processDescendants(Node node, int step, List<Node> result) {
+        XPathNode xPathNode = xPathNodes.get(step);
+        if (!mayContain(node, xPathNode) || processChildrenInParallel(node, step, result)) {
+            return;
+        }
+        Deque<Iterator<Node>> stack = new ArrayDeque<>();
+        stack.push(node.children().iterator());
+        while (!stack.isEmpty()) {
+            Iterator<Node> children = stack.peek();
+            if (!children.hasNext()) {
+                stack.pop();
+                continue;
+            }
+            Node child = children.next();
+            if (MatchIterator.matches(child, xPathNode)) {
+                addResults(child, step, result);
+            }
+            if (mayContain(child, xPathNode) && !processChildrenInParallel(child, step, result)) {
+                stack.push(child.children().iterator());
+            }
+        }
+    }
+
+    /**
+     * Processes children of a node by fork/join tasks if there are more of them than the threshold.
+     *
+     * @return {@code true} if children were processed
+     */
+    private boolean processChildrenInParallel(Node node, int step, List<Node> result) {
+        List<Node> children = node.children();
+        if (children.size() <= threshold) {
+            return false;
+        }
+        int leafSize = Math.max(1, children.size() / (pool.getParallelism() * 4));
+        result.addAll(new ChildrenTask(children, 0, children.size(), step, leafSize).compute());
+        return true;
+    }
+
+    private static boolean mayContain(Node node, XPathNode xPathNode) {
+        return MatchIterator.anyXpathNode(xPathNode) || MatchIterator.mayContainElement(node, xPathNode.name);
+    }
+
+    /**
+     * Adds a node matched by XPath node to the result (if it's the last one)
+     * or evaluates the next XPath node for it.
+     */
+    private void addResults(Node node, int step, List<Node> result) {
+        if (step == xPathNodes.size() - 1) {
+            result.add(node);
+        } else {
+            result.addAll(evaluate(node, step + 1));
+        }
+    }
+
+    /**
+     * Element XPath nodes without position can be evaluated for every child independently.
+     */
+    private static boolean splittable(XPathNode xPathNode) {
+        return MatchIterator.matchesIndividually(xPathNode);
+    }
+
+    /**
+     * Processes a range of children, splitting it in halves until it's not larger than {@code leafSize}.
+     * Tasks are never serialized (they hold nodes of a tree being evaluated).
+     */
+    @SuppressWarnings("serial")
+    private class ChildrenTask extends RecursiveTask<List<Node>> {
+        private final List<Node> children;
+        private final int from;
+        private final int to;
+        private final int step;
+        private final int leafSize;
+
+        ChildrenTask(List<Node> children, int from, int to, int step, int leafSize) {
+            this.children = children;
+            this.from = from;
+            this.to = to;
+            this.step = step;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected List<Node> compute() {
+            if (to - from > leafSize) {
+                int middle = (from + to) >>> 1;
+                ChildrenTask left = new ChildrenTask(children, from, middle, step, leafSize);
+                ChildrenTask right = new ChildrenTask(children, middle, to, step, leafSize);
+                left.fork();
+                List<Node> rightResult = right.compute();
+                List<Node> result = left.join();
+                result.addAll(rightResult);
+                return result;
+            }
+            List<Node> result = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                processChild(children.get(i), step, result);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package rk.tools.objectxpath;
+
+import rk.tools.objectxpath.xpath.Literal;
+import rk.tools.objectxpath.xpath.PredicateExpression;
+import rk.tools.objectxpath.xpath.PredicateExpression.Comparison;
+import rk.tools.objectxpath.xpath.PredicateExpression.Operand;
+import rk.tools.objectxpath.xpath.PredicateExpression.OperandType;
+import rk.tools.objectxpath.xpath.PredicateExpression.Operator;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Evaluates {@link PredicateExpression predicates} for candidate nodes.
+ * <p>
+ * Candidates are checked one by one while they are found, {@code and}/{@code or} are short-circuited
+ * and attribute values are compared without converting them into strings.
+ * Elements of primitive arrays are checked before they're boxed.
+ * Only predicates using {@code last()} need all candidates to be found first.
+ */
+class Predicates {
+
+    private Predicates() {
+    }
+
+    /**
+     * Filters candidate nodes (in document order) by a predicate,
+     * position of a candidate is its number among all candidates starting from {@code 1}.
+     */
+    static Iterator<Node> filter(Iterator<Node> candidates, PredicateExpression predicate) {
+        if (predicate.usesLast()) {
+            List<Node> nodes = new ArrayList<>();
+            candidates.forEachRemaining(nodes::add);
+            return filter(nodes.iterator(), predicate, nodes.size());
+        }
+        return filter(candidates, predicate, 0);
+    }
+
+    private static Iterator<Node> filter(Iterator<Node> candidates, PredicateExpression predicate, int last) {
+        return new NodeIterators.LazyIterator<Node>() {
+            private int position;
+
+            @Override
+            protected Node computeNext() {
+                while (candidates.hasNext()) {
+                    Node node = candidates.next();
+                    if (test(predicate, node, ++position, last)) {
+                        return node;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Filters elements of a primitive array node which is not expanded yet.
+     * Elements are read without boxing, nodes are created only for matching ones.
+     */
+    static Iterator<Node> filterElements(Node array, PredicateExpression predicate) {
+        int length = PrimitiveArrays.length(array.value);
+        return new NodeIterators.LazyIterator<Node>() {
+            private int index;
+
+            @Override
+            protected Node computeNext() {
+                while (index < length) {
+                    int current = index++;
+                    array.traversal.onCandidate();
+                    if (testElement(predicate, array, current, length)) {
+                        return array.primitiveElement(current);
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Checks a predicate for a node.
+     *
+     * @param position position of the node among candidates
+     * @param last     number of candidates (used only if predicate {@link PredicateExpression#usesLast() uses} it)
+     */
+    static boolean test(PredicateExpression predicate, Node node, int position, int last) {
+        node.traversal.onPredicate();
+        return test(predicate, node.traversal, node.value, null, 0, position, last);
+    }
+
+    /**
+     * Checks a predicate for an element of a primitive array node without boxing it,
+     * position of the element is its index plus {@code 1}.
+     */
+    static boolean testElement(PredicateExpression predicate, Node array, int index, int last) {
+        array.traversal.onPredicate();
+        return test(predicate, array.traversal, null, array.value, index, index + 1, last);
+    }
+
+    /**
+     * Checks a predicate for a node value or (if {@code array} is not {@code null}) an element of a primitive array,
+     * which does not have attributes. Attribute reads are counted by the traversal.
+     */
+    private static boolean test(PredicateExpression predicate, Traversal traversal, Object value, Object array,
+                                int index, int position, int last) {
+        if (predicate instanceof PredicateExpression.Logical) {
+            PredicateExpression.Logical logical = (PredicateExpression.Logical) predicate;
+            boolean left = test(logical.left, traversal, value, array, index, position, last);
+            if (left != logical.and) { //false for 'and', true for 'or'
+                return left;
+            }
+            return test(logical.right, traversal, value, array, index, position, last);
+        }
+        if (predicate instanceof PredicateExpression.Not) {
+            PredicateExpression operand = ((PredicateExpression.Not) predicate).operand;
+            return !test(operand, traversal, value, array, index, position, last);
+        }
+        if (predicate instanceof PredicateExpression.AttributeExists) {
+            ClassMetadata.FieldAccessor field = field(traversal, value,
+                    ((PredicateExpression.AttributeExists) predicate).attrName);
+            return field != null && !field.isNull(value);
+        }
+        return compare((Comparison) predicate, traversal, value, array, index, position, last);
+    }
+
+    /**
+     * Compares operands following XPath rules: if one of operands is a number (a numeric literal,
+     * {@code position()} or {@code last()}) or operator is not {@code =}/{@code !=} operands are compared
+     * as numbers, otherwise as strings. A comparison with a missing ({@code null}) attribute or value is always false.
+     */
+    private static boolean compare(Comparison comparison, Traversal traversal, Object value, Object array,
+                                   int index, int position, int last) {
+        Operand left = comparison.left;
+        Operand right = comparison.right;
+        ClassMetadata.FieldAccessor leftField = null;
+        ClassMetadata.FieldAccessor rightField = null;
+        if (left.type == OperandType.ATTRIBUTE) {
+            leftField = field(traversal, value, left.text);
+            if (leftField == null || leftField.isNull(value)) {
+                return false;
+            }
+        }
+        if (right.type == OperandType.ATTRIBUTE) {
+            rightField = field(traversal, value, right.text);
+            if (rightField == null || rightField.isNull(value)) {
+                return false;
+            }
+        }
+        if ((left.type == OperandType.SELF || right.type == OperandType.SELF) && value == null && array == null) {
+            return false;
+        }
+        Operator operator = comparison.operator;
+        boolean equality = operator == Operator.EQUAL || operator == Operator.NOT_EQUAL;
+        if (!equality || isNumeric(left) || isNumeric(right)) {
+            return operator.compare(number(left, leftField, value, array, index, position, last),
+                    number(right, rightField, value, array, index, position, last));
+        }
+        boolean equal;
+        if (isValue(left) && isValue(right)) {
+            equal = string(left, leftField, value, array, index).equals(string(right, rightField, value, array, index));
+        } else if (isValue(left)) {
+            equal = matches(left, leftField, value, array, index, right.literal);
+        } else if (isValue(right)) {
+            equal = matches(right, rightField, value, array, index, left.literal);
+        } else {
+            equal = left.text.equals(right.text);
+        }
+        return equal == (operator == Operator.EQUAL);
+    }
+
+    private static boolean isNumeric(Operand operand) {
+        return operand.type == OperandType.NUMBER
+                || operand.type == OperandType.POSITION
+                || operand.type == OperandType.LAST;
+    }
+
+    /**
+     * Checks whether operand is a value of an object (an attribute or the value itself), not a constant.
+     */
+    private static boolean isValue(Operand operand) {
+        return operand.type == OperandType.ATTRIBUTE || operand.type == OperandType.SELF;
+    }
+
+    private static double number(Operand operand, ClassMetadata.FieldAccessor field, Object value,
+                                 Object array, int index, int position, int last) {
+        switch (operand.type) {
+            case ATTRIBUTE:
+                return field.number(value);
+            case SELF:
+                return array != null ? PrimitiveArrays.number(array, index) : ClassMetadata.toNumber(value);
+            case POSITION:
+                return position;
+            case LAST:
+                return last;
+            default:
+                return operand.number;
+        }
+    }
+
+    private static boolean matches(Operand operand, ClassMetadata.FieldAccessor field, Object value,
+                                   Object array, int index, Literal literal) {
+        if (operand.type == OperandType.ATTRIBUTE) {
+            return field.matches(value, literal);
+        }
+        return array != null ? PrimitiveArrays.matches(array, index, literal) : literal.matches(value);
+    }
+
+    private static String string(Operand operand, ClassMetadata.FieldAccessor field, Object value,
+                                 Object array, int index) {
+        if (operand.type == OperandType.ATTRIBUTE) {
+            return String.valueOf(field.get(value));
+        }
+        return String.valueOf(array != null ? PrimitiveArrays.get(array, index) : value);
+    }
+
+    private static ClassMetadata.FieldAccessor field(Traversal traversal, Object value, String name) {
+        ClassMetadata.FieldAccessor field = value == null ? null : ClassMetadata.of(value).field(name);
+        if (field != null) {
+            traversal.onFieldRead(1);
+        }
+        return field;
+    }
+}
@@ -0,0 +1,121 @@
+package rk.tools.objectxpath;
+
+import rk.tools.objectxpath.xpath.Literal;
+
+import java.lang.reflect.Array;
+
+/**
+ * Reads elements of primitive arrays ({@code int[]}, {@code double[]}, etc.) without boxing them,
+ * so predicates and aggregates over arrays of numbers do not create a wrapper per element.
+ */
+class PrimitiveArrays {
+
+    private PrimitiveArrays() {
+    }
+
+    static boolean isPrimitiveArray(Object value) {
+        return value != null && value.getClass().isArray() && value.getClass().getComponentType().isPrimitive();
+    }
+
+    static int length(Object array) {
+        return Array.getLength(array);
+    }
+
+    /**
+     * @return boxed element, used only for elements which become tree nodes
+     */
+    static Object get(Object array, int index) {
+        return Array.get(array, index);
+    }
+
+    /**
+     * @return element as a number, {@code boolean} elements are {@code NaN}
+     * and {@code char} elements are numbers only if they're digits (the same way as field values)
+     */
+    static double number(Object array, int index) {
+        if (array instanceof int[]) {
+            return ((int[]) array)[index];
+        }
+        if (array instanceof long[]) {
+            return ((long[]) array)[index];
+        }
+        if (array instanceof double[]) {
+            return ((double[]) array)[index];
+        }
+        if (array instanceof float[]) {
+            return ((float[]) array)[index];
+        }
+        if (array instanceof short[]) {
+            return ((short[]) array)[index];
+        }
+        if (array instanceof byte[]) {
+            return ((byte[]) array)[index];
+        }
+        if (array instanceof char[]) {
+            char value = ((char[]) array)[index];
+            return value >= '0' && value <= '9' ? value - '0' : Double.NaN;
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Compares an element with a literal without converting the element into a string.
+     */
+    static boolean matches(Object array, int index, Literal literal) {
+        if (array instanceof int[]) {
+            return literal.matches(((int[]) array)[index]);
+        }
+        if (array instanceof long[]) {
+            return literal.matches(((long[]) array)[index]);
+        }
+        if (array instanceof double[]) {
+            return literal.matches(((double[]) array)[index]);
+        }
+        if (array instanceof float[]) {
+            return literal.matches(((float[]) array)[index]);
+        }
+        if (array instanceof short[]) {
+            return literal.matches(((short[]) array)[index]);
+        }
+        if (array instanceof byte[]) {
+            return literal.matches(((byte[]) array)[index]);
+        }
+        if (array instanceof char[]) {
+            return literal.matches(((char[]) array)[index]);
+        }
+        return literal.matches(((boolean[]) array)[index]);
+    }
+
+    /**
+     * Sums all elements of an array, {@code NaN} for arrays of {@code boolean}
+     * or of not digit {@code char} values (like XPath {@code sum()} of not numeric values).
+     */
+    static double sum(Object array) {
+        if (array instanceof int[]) {
+            long sum = 0;
+            for (int value : (int[]) array) {
+                sum += value;
+            }
+            return sum;
+        }
+        if (array instanceof long[]) {
+            double sum = 0;
+            for (long value : (long[]) array) {
+                sum += value;
+            }
+            return sum;
+        }
+        if (array instanceof double[]) {
+            double sum = 0;
+            for (double value : (double[]) array) {
+                sum += value;
+            }
+            return sum;
+        }
+        double sum = 0;
+        for (int i = 0, length = length(array); i < length; i++) {
+            sum += number(array, i);
+        }
+        return sum;
+    }
+}
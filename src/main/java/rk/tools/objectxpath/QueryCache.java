@@ -0,0 +1,175 @@
+package rk.tools.objectxpath;
+
+import rk.tools.objectxpath.exception.InvalidXPathExpressionError;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Size bounded cache of compiled queries keyed by query string.
+ * <p>
+ * Both valid and invalid queries are cached, so repeated invalid queries are rejected
+ * without being validated again (with a new error carrying the message of the first validation).
+ * Lookups are lock free. Recency of entries is tracked by a clock which advances on misses only,
+ * so a hit writes to its entry only once after every miss. When cache is full
+ * the least recently used entries are evicted in batches, so the entries are scanned
+ * only once in every {@code maxSize / 8} misses.
+ */
+public class QueryCache {
+    private static final int EVICTION_BATCH_DIVISOR = 8;
+
+    private final int maxSize;
+    private final int evictionBatch;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final OXPyMetrics metrics;
+
+    QueryCache(int maxSize, OXPyMetrics metrics) {
+        this.maxSize = maxSize;
+        this.evictionBatch = Math.max(1, maxSize / EVICTION_BATCH_DIVISOR);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Gets compiled query from the cache or compiles and caches it.
+     *
+     * @param xPathQuery XPath query
+     * @param compiler   function which validates and parses a query
+     * @return compiled query
+     * @throws InvalidXPathExpressionError if query is invalid (including previously cached invalid queries)
+     */
+    CompiledQuery get(String xPathQuery, Function<String, CompiledQuery> compiler) {
+        if (maxSize == 0) {
+            misses.increment();
+            metrics.cacheMiss(xPathQuery);
+            return compiler.apply(xPathQuery);
+        }
+        Entry entry = entries.get(xPathQuery);
+        if (entry != null) {
+            hits.increment();
+            metrics.cacheHit(xPathQuery);
+            entry.touch(clock.get());
+            return entry.get();
+        }
+        misses.increment();
+        metrics.cacheMiss(xPathQuery);
+        try {
+            CompiledQuery query = compiler.apply(xPathQuery);
+            put(new Entry(xPathQuery, query, null));
+            return query;
+        } catch (InvalidXPathExpressionError e) {
+            put(new Entry(xPathQuery, null, e));
+            throw e;
+        }
+    }
+
+    private void put(Entry entry) {
+        entry.touch(clock.incrementAndGet());
+        if (entries.putIfAbsent(entry.xPathQuery, entry) == null && entries.size() > maxSize) {
+            evict();
+        }
+    }
+
+    /**
+     * Evicts least recently used entries, so that there is room for a batch of new entries.
+     * Entries are scanned only if cache is still full (other thread may have already evicted them).
+     */
+    private synchronized void evict() {
+        int excess = entries.size() - maxSize;
+        if (excess <= 0) {
+            return;
+        }
+        int count = Math.min(entries.size(), excess - 1 + evictionBatch);
+        //the most recently used of selected entries is at the head
+        PriorityQueue<Entry> eldest = new PriorityQueue<>(count,
+                Comparator.comparingLong((Entry entry) -> entry.lastAccess).reversed());
+        for (Entry entry : entries.values()) {
+            if (eldest.size() < count) {
+                eldest.add(entry);
+            } else if (entry.lastAccess < eldest.peek().lastAccess) {
+                eldest.poll();
+                eldest.add(entry);
+            }
+        }
+        for (Entry entry : eldest) {
+            if (entries.remove(entry.xPathQuery, entry)) {
+                evictions.increment();
+            }
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "QueryCache{size=" + size() + ", maxSize=" + maxSize + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "}";
+    }
+
+    private static class Entry {
+        final String xPathQuery;
+        /**
+         * {@code null} if query is invalid.
+         */
+        final CompiledQuery query;
+        /**
+         * Error thrown by validation of invalid query.
+         */
+        final InvalidXPathExpressionError error;
+        /**
+         * Value of the cache clock when entry was used last time.
+         */
+        volatile long lastAccess;
+
+        Entry(String xPathQuery, CompiledQuery query, InvalidXPathExpressionError error) {
+            this.xPathQuery = xPathQuery;
+            this.query = query;
+            this.error = error;
+        }
+
+        void touch(long time) {
+            //entries used often are written once per clock tick instead of on every hit
+            if (lastAccess != time) {
+                lastAccess = time;
+            }
+        }
+
+        CompiledQuery get() {
+            if (query == null) {
+                //a new error for every hit, so its stack trace points to the caller
+                throw new InvalidXPathExpressionError(error);
+            }
+            return query;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package rk.tools.objectxpath;
+
+import rk.tools.objectxpath.xpath.NodeWithAttribute;
+import rk.tools.objectxpath.xpath.NodeWithIndex;
+import rk.tools.objectxpath.xpath.NodeWithPredicate;
+import rk.tools.objectxpath.xpath.XPathNode;
+
+import java.util.List;
+
+/**
+ * Renders parsed XPath nodes of a compiled query as a human readable plan, one line per XPath node:
+ * <pre>
+ * /gears/gear[@weight &gt; 1.3]/@name
+ * 1. /gears: CHILD SIMPLE_NODE name=gears
+ * 2. /gear[@weight &gt; 1.3]: CHILD NODE_WITH_PREDICATE name=gear predicate=@weight &gt; 1.3
+ * 3. /@name: CHILD NODE_ATTRIBUTE name=name
+ * </pre>
+ */
+final class QueryPlan {
+
+    private QueryPlan() {
+    }
+
+    static String explain(CompiledQuery query) {
+        StringBuilder plan = new StringBuilder(query.getQuery());
+        List<XPathNode> xPathNodes = query.getXPathNodes();
+        for (int i = 0; i < xPathNodes.size(); i++) {
+            plan.append('\n').append(i + 1).append(". ").append(describe(query.getQuery(), xPathNodes.get(i)));
+        }
+        return plan.toString();
+    }
+
+    /**
+     * @return part of the query an XPath node was parsed from (e.g. {@code /gear[2]})
+     */
+    static String step(String query, XPathNode xPathNode) {
+        return query.substring(xPathNode.startIndex, xPathNode.endIndex);
+    }
+
+    /**
+     * @return step of the XPath node with its relationship, type, name and predicate
+     */
+    static String describe(String query, XPathNode xPathNode) {
+        StringBuilder description = new StringBuilder(step(query, xPathNode))
+                .append(": ").append(xPathNode.relationship)
+                .append(' ').append(xPathNode.type)
+                .append(" name=").append(xPathNode.name);
+        if (xPathNode instanceof NodeWithIndex) {
+            description.append(" index=").append(((NodeWithIndex) xPathNode).index);
+        } else if (xPathNode instanceof NodeWithAttribute) {
+            NodeWithAttribute nodeWithAttribute = (NodeWithAttribute) xPathNode;
+            description.append(" predicate=@").append(nodeWithAttribute.attrName)
+                    .append(" = '").append(nodeWithAttribute.attrValue).append('\'');
+        } else if (xPathNode instanceof NodeWithPredicate) {
+            NodeWithPredicate nodeWithPredicate = (NodeWithPredicate) xPathNode;
+            description.append(" predicate=").append(nodeWithPredicate.predicate);
+            if (nodeWithPredicate.predicate.usesLast()) {
+                description.append(" (all candidates are collected for last())");
+            }
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,228 @@
+package rk.tools.objectxpath;
+
+import rk.tools.objectxpath.xpath.XPathNode;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Statistics of a query evaluated step by step: every XPath node is evaluated for all matches
+ * of the previous one before the next XPath node is evaluated,
+ * so unlike regular evaluation all intermediate matches are collected.
+ * Evaluation is always sequential and results are the same as of {@link OXPy#process(String, Object)}.
+ * Profiled evaluations are neither reported to {@link OXPyMetrics} nor recorded by JDK Flight Recorder.
+ * <p>
+ * Allocations are measured by HotSpot thread allocation counters,
+ * they're {@code -1} if the JVM does not support them.
+ *
+ * @see OXPy#profile(String, Object)
+ */
+public final class QueryProfile {
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private static final boolean allocationsSupported = allocationsSupported();
+
+    private final String query;
+    private final List<Step> steps;
+    private final List<Object> results;
+    private final long nanos;
+
+    private QueryProfile(String query, List<Step> steps, List<Object> results, long nanos) {
+        this.query = query;
+        this.steps = unmodifiableList(steps);
+        this.results = unmodifiableList(results);
+        this.nanos = nanos;
+    }
+
+    /**
+     * Evaluates compiled query for the tree step by step.
+     */
+    static QueryProfile run(CompiledQuery query, Node root) {
+        Traversal traversal = root.traversal;
+        List<Step> steps = new ArrayList<>();
+        List<Node> contexts = Collections.singletonList(root);
+        long start = System.nanoTime();
+        for (XPathNode xPathNode : query.getXPathNodes()) {
+            long candidates = traversal.candidates();
+            long nodes = traversal.createdNodes();
+            long fieldReads = traversal.fieldReads();
+            long predicateEvaluations = traversal.predicateEvaluations();
+            long allocatedBytes = allocatedBytes();
+            long stepStart = System.nanoTime();
+            List<Node> matches = new ArrayList<>();
+            for (Node context : contexts) {
+                MatchIterator.select(context, xPathNode).forEachRemaining(matches::add);
+            }
+            long stepNanos = System.nanoTime() - stepStart;
+            steps.add(new Step(QueryPlan.describe(query.getQuery(), xPathNode), contexts.size(),
+                    traversal.candidates() - candidates, traversal.createdNodes() - nodes,
+                    traversal.fieldReads() - fieldReads,
+                    traversal.predicateEvaluations() - predicateEvaluations, matches.size(), stepNanos,
+                    allocationsSupported ? allocatedBytes() - allocatedBytes : -1));
+            contexts = matches;
+        }
+        long nanos = System.nanoTime() - start;
+        List<Object> results = new ArrayList<>(contexts.size());
+        contexts.forEach(node -> results.add(node.value));
+        return new QueryProfile(query.getQuery(), steps, results, nanos);
+    }
+
+    private static boolean allocationsSupported() {
+        try {
+            return threads instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+                    && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled();
+        } catch (LinkageError e) { //not a HotSpot based JVM
+            return false;
+        }
+    }
+
+    private static long allocatedBytes() {
+        if (!allocationsSupported) {
+            return -1;
+        }
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * @return statistics of every XPath node of the query
+     */
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return values of matching nodes in document order (may contain {@code null} values)
+     */
+    public List<Object> getResults() {
+        return results;
+    }
+
+    /**
+     * @return time spent on all steps
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * Renders a table with a row per step.
+     */
+    @Override
+    public String toString() {
+        StringBuilder table = new StringBuilder(query).append(": ").append(results.size()).append(" matches in ")
+                .append(nanos / 1_000).append(" us\n")
+                .append(String.format("%6s %8s %8s %8s %8s %8s %10s %12s  %s",
+                        "input", "visited", "created", "reads", "preds", "matches", "us", "bytes", "step"));
+        for (Step step : steps) {
+            table.append('\n').append(String.format("%6d %8d %8d %8d %8d %8d %10d %12d  %s",
+                    step.input, step.visitedNodes, step.createdNodes, step.fieldReads, step.predicateEvaluations,
+                    step.matches, step.nanos / 1_000, step.allocatedBytes, step.description));
+        }
+        return table.toString();
+    }
+
+    /**
+     * Statistics of a single XPath node of a query.
+     */
+    public static final class Step {
+        private final String description;
+        private final int input;
+        private final long visitedNodes;
+        private final long createdNodes;
+        private final long fieldReads;
+        private final long predicateEvaluations;
+        private final int matches;
+        private final long nanos;
+        private final long allocatedBytes;
+
+        Step(String description, int input, long visitedNodes, long createdNodes, long fieldReads,
+             long predicateEvaluations, int matches, long nanos, long allocatedBytes) {
+            this.description = description;
+            this.input = input;
+            this.visitedNodes = visitedNodes;
+            this.createdNodes = createdNodes;
+            this.fieldReads = fieldReads;
+            this.predicateEvaluations = predicateEvaluations;
+            this.matches = matches;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        /**
+         * @return step with its XPath node type, relationship and predicate (see {@link OXPy#explain(String)})
+         */
+        public String getDescription() {
+            return description;
+        }
+
+        /**
+         * @return number of context nodes (matches of the previous step)
+         */
+        public int getInput() {
+            return input;
+        }
+
+        /**
+         * @return number of candidate nodes the step examined for all input nodes
+         * (e.g. children compared by name or primitive array elements checked by a predicate)
+         */
+        public long getVisitedNodes() {
+            return visitedNodes;
+        }
+
+        /**
+         * @return number of nodes created by the step, nodes already created by previous steps are not counted
+         */
+        public long getCreatedNodes() {
+            return createdNodes;
+        }
+
+        /**
+         * @return number of values read from object fields by reflection
+         */
+        public long getFieldReads() {
+            return fieldReads;
+        }
+
+        /**
+         * @return number of candidates examined by the step's predicate
+         */
+        public long getPredicateEvaluations() {
+            return predicateEvaluations;
+        }
+
+        /**
+         * @return number of nodes matched by the step
+         */
+        public int getMatches() {
+            return matches;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return number of bytes allocated by the step or {@code -1} if it's not supported
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return description + ": input=" + input + ", visitedNodes=" + visitedNodes
+                    + ", createdNodes=" + createdNodes + ", fieldReads=" + fieldReads + ", predicateEvaluations=" + predicateEvaluations
+                    + ", matches=" + matches + ", nanos=" + nanos + ", allocatedBytes=" + allocatedBytes;
+        }
+    }
+}
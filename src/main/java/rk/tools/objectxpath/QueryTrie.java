@@ -0,0 +1,114 @@
+package rk.tools.objectxpath;
+
+import rk.tools.objectxpath.xpath.NodeRelationship;
+import rk.tools.objectxpath.xpath.XPathNode;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Several compiled queries merged into a prefix tree by their XPath nodes.
+ * <p>
+ * Queries are evaluated together over a single object tree:
+ * XPath nodes shared by several queries are evaluated only once
+ * and every object is converted into a tree node only once.
+ * <p>
+ * Sibling descendant XPath nodes (e.g. first steps of {@code //gear} and {@code //valve})
+ * are evaluated by a single descendant search which checks every visited node against all of them.
+ * Positional XPath nodes depend on other candidates, so each of them still searches the subtree on its own.
+ */
+class QueryTrie {
+    private final Map<XPathNode, QueryTrie> children = new LinkedHashMap<>();
+    /**
+     * Indexes of queries which end at this trie node.
+     */
+    private final List<Integer> queries = new ArrayList<>(1);
+
+    private QueryTrie() {
+    }
+
+    static QueryTrie of(List<CompiledQuery> queries) {
+        QueryTrie root = new QueryTrie();
+        for (int i = 0; i < queries.size(); i++) {
+            QueryTrie trie = root;
+            for (XPathNode xPathNode : queries.get(i).getXPathNodes()) {
+                trie = trie.children.computeIfAbsent(xPathNode, _xPathNode -> new QueryTrie());
+            }
+            trie.queries.add(i);
+        }
+        return root;
+    }
+
+    /**
+     * Evaluates all queries of the trie for provided object tree.
+     *
+     * @return matching nodes of every query (in the same order as queries the trie was created from)
+     */
+    List<List<Node>> evaluate(Node root, int queryCount) {
+        List<List<Node>> matches = new ArrayList<>(queryCount);
+        for (int i = 0; i < queryCount; i++) {
+            matches.add(new ArrayList<>());
+        }
+        evaluate(root, matches);
+        return matches;
+    }
+
+    private void evaluate(Node context, List<List<Node>> matches) {
+        Map<XPathNode, QueryTrie> descendants = new LinkedHashMap<>();
+        children.forEach((xPathNode, trie) -> {
+            if (sharesDescendantSearch(xPathNode)) {
+                descendants.put(xPathNode, trie);
+                return;
+            }
+            Iterator<Node> nodes = MatchIterator.select(context, xPathNode);
+            while (nodes.hasNext()) {
+                trie.accept(nodes.next(), matches);
+            }
+        });
+        if (!descendants.isEmpty()) {
+            evaluateDescendants(context, descendants, matches);
+        }
+    }
+
+    /**
+     * Visits descendants of the context node once and passes every node to all XPath nodes it matches.
+     * Subtrees are skipped only if none of XPath nodes can match an element inside them.
+     */
+    private static void evaluateDescendants(Node context, Map<XPathNode, QueryTrie> descendants,
+                                            List<List<Node>> matches) {
+        Predicate<Node> expand = node -> true;
+        if (descendants.keySet().stream().noneMatch(MatchIterator::anyXpathNode)) {
+            Set<String> names = new LinkedHashSet<>();
+            descendants.keySet().forEach(xPathNode -> names.add(xPathNode.name));
+            expand = node -> names.stream().anyMatch(name -> MatchIterator.mayContainElement(node, name));
+        }
+        Iterator<Node> nodes = NodeIterators.descendants(context, expand);
+        while (nodes.hasNext()) {
+            Node node = nodes.next();
+            descendants.forEach((xPathNode, trie) -> {
+                if (MatchIterator.matches(node, xPathNode)) {
+                    trie.accept(node, matches);
+                }
+            });
+        }
+    }
+
+    /**
+     * Adds a node matched by the XPath node of this trie to its queries and evaluates the rest of them.
+     */
+    private void accept(Node node, List<List<Node>> matches) {
+        for (int query : queries) {
+            matches.get(query).add(node);
+        }
+        if (!children.isEmpty()) {
+            evaluate(node, matches);
+        }
+    }
+
+    /**
+     * Checks whether XPath node selects descendant elements which can be matched one by one.
+     */
+    private static boolean sharesDescendantSearch(XPathNode xPathNode) {
+        return xPathNode.relationship == NodeRelationship.DESCENDANT && MatchIterator.matchesIndividually(xPathNode);
+    }
+}
@@ -0,0 +1,229 @@
+package rk.tools.objectxpath;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Collections.unmodifiableSet;
+
+/**
+ * Answers whether a tree built from an object of some class (or from a value of some field)
+ * can contain an element or an attribute with a given name.
+ * <p>
+ * It is built from declared field types (including element types of generic collections and arrays).
+ * A declared type which is not final stands for all classes assignable to it which were observed
+ * as classes of tree nodes so far (and for the type itself unless it's abstract).
+ * When a class is observed for the first time all indexes are invalidated and rebuilt on next use,
+ * so an index changes only while new classes appear. Maps, arrays and collections with unknown
+ * element types (as well as fields which may hold them) make the index 'open', it may contain any name.
+ */
+final class Reachability {
+    private static final Set<Class<?>> observedTypes = ConcurrentHashMap.newKeySet();
+    private static final AtomicInteger observedVersion = new AtomicInteger();
+
+    /**
+     * Names of elements below a node (not including the node itself), {@code null} if open.
+     */
+    private final Set<String> elementNames;
+    /**
+     * Names of attributes of a node and nodes below it, {@code null} if open.
+     */
+    private final Set<String> attributeNames;
+    /**
+     * Version of observed classes the index was built for.
+     */
+    private final int version;
+
+    private Reachability(Set<String> elementNames, Set<String> attributeNames, int version) {
+        this.elementNames = elementNames;
+        this.attributeNames = attributeNames;
+        this.version = version;
+    }
+
+    boolean mayContainElement(String name) {
+        return elementNames == null || elementNames.contains(name);
+    }
+
+    boolean mayContainAttribute(String name) {
+        return attributeNames == null || attributeNames.contains(name);
+    }
+
+    boolean isOpen() {
+        return elementNames == null;
+    }
+
+    /**
+     * Checks whether the index was built before a new class was observed.
+     */
+    boolean isStale() {
+        return version != observedVersion.get();
+    }
+
+    /**
+     * Registers a class of a tree node, indexes built without it become stale.
+     */
+    static void observe(Class<?> type) {
+        if (observedTypes.add(type)) {
+            observedVersion.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return names below a node of an object of provided class
+     */
+    static Reachability of(ClassMetadata metadata) {
+        Builder builder = new Builder();
+        builder.addValue(metadata.type);
+        return builder.build();
+    }
+
+    /**
+     * @return names below a node of a value of provided field (e.g. items of a generic list)
+     */
+    static Reachability of(Field field) {
+        Builder builder = new Builder();
+        builder.addSlot(field.getGenericType());
+        return builder.build();
+    }
+
+    /**
+     * Collects names reachable from declared types, becomes open as soon as any of them is not known.
+     */
+    private static class Builder {
+        private final int version = observedVersion.get();
+        private final Set<String> elementNames = new HashSet<>();
+        private final Set<String> attributeNames = new HashSet<>();
+        private final Set<Class<?>> visited = new HashSet<>();
+        private final Deque<ClassMetadata> queue = new ArrayDeque<>();
+        private boolean open;
+
+        Reachability build() {
+            while (!open && !queue.isEmpty()) {
+                ClassMetadata current = queue.poll();
+                current.attributes.forEach(field -> attributeNames.add(field.name));
+                for (ClassMetadata.FieldAccessor child : current.children) {
+                    elementNames.add(child.name);
+                    addSlot(child.field.getGenericType());
+                }
+            }
+            return open
+                    ? new Reachability(null, null, version)
+                    : new Reachability(unmodifiableSet(elementNames), unmodifiableSet(attributeNames), version);
+        }
+
+        /**
+         * Adds names below a node of a value declared with provided type.
+         */
+        void addSlot(Type declaredType) {
+            Class<?> type = rawType(declaredType);
+            if (type == null || Map.class.isAssignableFrom(type)) { //map keys are not known upfront
+                open = true;
+            } else if (Collection.class.isAssignableFrom(type)) {
+                addItems(elementType(declaredType));
+            } else if (type.isArray()) {
+                addItems(type.getComponentType());
+            } else {
+                possibleTypes(type).forEach(this::addValue);
+            }
+        }
+
+        /**
+         * Adds names of items of a collection or an array and names below them.
+         */
+        private void addItems(Class<?> itemType) {
+            if (itemType == null) {
+                open = true;
+                return;
+            }
+            if (itemType.isPrimitive()) {
+                elementNames.add("item");
+                return;
+            }
+            for (Class<?> type : possibleTypes(itemType)) {
+                ClassMetadata metadata = metadataOf(type);
+                if (metadata == null) {
+                    open = true;
+                    return;
+                }
+                elementNames.add(metadata.isPrimitive() ? "item" : metadata.elementName);
+                addValue(type);
+            }
+        }
+
+        /**
+         * Adds names below a node of an object of exactly provided class.
+         */
+        void addValue(Class<?> type) {
+            ClassMetadata metadata = metadataOf(type);
+            if (metadata == null || (metadata.kind != ClassMetadata.Kind.OBJECT && !metadata.isPrimitive())) {
+                open = true; //e.g. a list held by a field of type Object
+            } else if (metadata.kind == ClassMetadata.Kind.OBJECT && visited.add(type)) {
+                queue.add(metadata);
+            }
+        }
+    }
+
+    /**
+     * @return declared type and observed classes which can be assigned to it
+     */
+    private static Collection<Class<?>> possibleTypes(Class<?> declaredType) {
+        if (ClassMetadata.isPrimitive(declaredType) || Modifier.isFinal(declaredType.getModifiers())) {
+            return Collections.singletonList(declaredType);
+        }
+        List<Class<?>> types = new ArrayList<>();
+        if (!declaredType.isInterface() && !Modifier.isAbstract(declaredType.getModifiers())) {
+            types.add(declaredType);
+        }
+        for (Class<?> type : observedTypes) {
+            if (type != declaredType && declaredType.isAssignableFrom(type)) {
+                types.add(type);
+            }
+        }
+        return types;
+    }
+
+    /**
+     * @return class metadata or {@code null} if class can not be inspected (e.g. inaccessible JDK class)
+     */
+    private static ClassMetadata metadataOf(Class<?> type) {
+        try {
+            return ClassMetadata.of(type);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Class<?> rawType(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        }
+        if (type instanceof ParameterizedType && ((ParameterizedType) type).getRawType() instanceof Class) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        }
+        return null; //type variables and wildcards
+    }
+
+    /**
+     * @return element type of a generic collection or {@code null} if it's unknown
+     */
+    private static Class<?> elementType(Type type) {
+        if (!(type instanceof ParameterizedType)) {
+            return null;
+        }
+        Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+        if (arguments.length != 1 || !(arguments[0] instanceof Class)) {
+            return null;
+        }
+        return (Class<?>) arguments[0];
+    }
+
+    @Override
+    public String toString() {
+        return isOpen() ? "Reachability{open}"
+                : "Reachability{elements=" + elementNames + ", attributes=" + attributeNames + "}";
+    }
+}
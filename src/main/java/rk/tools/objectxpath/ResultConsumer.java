@@ -0,0 +1,18 @@
+package rk.tools.objectxpath;
+
+/**
+ * Receives values of query matches one by one, in document order, while the query is evaluated.
+ * Matches are not collected into a result list, so evaluation does not allocate result containers.
+ *
+ * @see OXPy#evaluate(String, Object, ResultConsumer)
+ */
+@FunctionalInterface
+public interface ResultConsumer {
+
+    /**
+     * @param value value of a matching node (may be {@code null})
+     * @return {@code true} to continue evaluation, {@code false} to stop it
+     * (so {@code List::add} can be used as a consumer)
+     */
+    boolean accept(Object value);
+}
@@ -0,0 +1,215 @@
+package rk.tools.objectxpath;
+
+import rk.tools.objectxpath.exception.EvaluationLimitExceededError;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * State of a single evaluation shared by all nodes of an object tree:
+ * configured limits, which are checked every time a node is expanded.
+ * If {@link OXPyMetrics} are configured or evaluation events are recorded by JDK Flight Recorder,
+ * it also counts created nodes, field reads and predicate evaluations.
+ * <p>
+ * State is thread-safe, so a tree can be expanded by parallel evaluation tasks.
+ */
+class Traversal {
+    private final boolean limited;
+    private final int maxDepth;
+    private final long maxNodes;
+    private final long timeLimitNanos;
+    private final long startTime;
+    private final AtomicLong nodes = new AtomicLong(1); //root node
+    /**
+     * Counters are created only if metrics or flight recorder events are recorded.
+     */
+    private final OXPyMetrics metrics;
+    /**
+     * Flight recorder event or {@code null}.
+     */
+    private final Object event;
+    private final boolean recording;
+    private final LongAdder createdNodes;
+    private final LongAdder fieldReads;
+    private final LongAdder predicateEvaluations;
+    /**
+     * Number of candidate nodes examined by XPath nodes, counted only for profiling.
+     */
+    private final LongAdder candidates;
+
+    private Traversal(int maxDepth, long maxNodes, long timeLimitNanos, OXPyMetrics metrics, Object event,
+                      boolean recording, boolean profiling) {
+        this.limited = maxDepth != Integer.MAX_VALUE || maxNodes != Long.MAX_VALUE || timeLimitNanos != Long.MAX_VALUE;
+        this.maxDepth = maxDepth;
+        this.maxNodes = maxNodes;
+        this.timeLimitNanos = timeLimitNanos;
+        this.metrics = metrics;
+        this.event = event;
+        this.recording = recording || event != null;
+        this.createdNodes = this.recording ? new LongAdder() : null;
+        this.fieldReads = this.recording ? new LongAdder() : null;
+        this.predicateEvaluations = this.recording ? new LongAdder() : null;
+        this.candidates = profiling ? new LongAdder() : null;
+        this.startTime = timeLimitNanos == Long.MAX_VALUE && !this.recording ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Starts a new traversal, time limit is counted from this moment.
+     */
+    static Traversal start(OXPyConfig config) {
+        return new Traversal(config.getMaxDepth(), config.getMaxNodes(), config.getTimeLimitNanos(),
+                config.getMetrics(), FlightRecorderEvents.beginEvaluation(), config.getMetrics() != OXPyMetrics.NONE, false);
+    }
+
+    /**
+     * Starts a new traversal which is not reported as an evaluation (e.g. of a lazy stream or an index).
+     */
+    static Traversal unreported(OXPyConfig config) {
+        return new Traversal(config.getMaxDepth(), config.getMaxNodes(), config.getTimeLimitNanos(),
+                OXPyMetrics.NONE, null, false, false);
+    }
+
+    /**
+     * Starts a new traversal of a profiled evaluation, which counts nodes, field reads, predicate evaluations
+     * and examined candidates, but is neither reported to metrics nor recorded by flight recorder.
+     */
+    static Traversal profiling(OXPyConfig config) {
+        return new Traversal(config.getMaxDepth(), config.getMaxNodes(), config.getTimeLimitNanos(),
+                OXPyMetrics.NONE, null, true, true);
+    }
+
+    /**
+     * @return {@code true} if statistics of this traversal are reported to metrics
+     */
+    boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * @return number of nodes created so far (excluding the root), {@code 0} if not recording
+     */
+    long createdNodes() {
+        return recording ? createdNodes.sum() : 0;
+    }
+
+    /**
+     * @return number of field reads so far, {@code 0} if not recording
+     */
+    long fieldReads() {
+        return recording ? fieldReads.sum() : 0;
+    }
+
+    /**
+     * @return number of predicate evaluations so far, {@code 0} if not recording
+     */
+    long predicateEvaluations() {
+        return recording ? predicateEvaluations.sum() : 0;
+    }
+
+    /**
+     * @return {@code true} if candidates examined by XPath nodes are counted
+     */
+    boolean isProfiling() {
+        return candidates != null;
+    }
+
+    /**
+     * @return number of candidates examined so far, {@code 0} if not profiling
+     */
+    long candidates() {
+        return candidates != null ? candidates.sum() : 0;
+    }
+
+    /**
+     * Reports statistics of the completed evaluation to configured metrics and flight recorder.
+     *
+     * @param query   evaluated query
+     * @param root    object the query was evaluated for
+     * @param results number of matches
+     */
+    void complete(String query, Object root, long results) {
+        if (!recording) {
+            return;
+        }
+        long nodes = createdNodes.sum() + 1;
+        if (metrics != OXPyMetrics.NONE) {
+            metrics.evaluated(new OXPyMetrics.Evaluation(query, System.nanoTime() - startTime,
+                    nodes, fieldReads.sum(), predicateEvaluations.sum(), results));
+        }
+        FlightRecorderEvents.commitEvaluation(event, query, root, nodes, results);
+    }
+
+    /**
+     * Called when values of fields of an object are read.
+     */
+    void onFieldRead(int count) {
+        if (recording) {
+            fieldReads.add(count);
+        }
+    }
+
+    /**
+     * Called when an XPath node examines a candidate node (e.g. compares its name).
+     */
+    void onCandidate() {
+        if (candidates != null) {
+            candidates.increment();
+        }
+    }
+
+    /**
+     * Called when a predicate is checked for a candidate node.
+     */
+    void onPredicate() {
+        if (recording) {
+            predicateEvaluations.increment();
+        }
+    }
+
+    /**
+     * Called before attributes and children of a node are created, so a node with too many children
+     * (e.g. a huge collection) fails before nodes are created for them.
+     *
+     * @param node          node to be expanded
+     * @param maxNodeCount  max number of attributes and children which will be created
+     * @throws EvaluationLimitExceededError if depth limit or remaining node budget is exceeded
+     */
+    void beforeExpand(Node node, int maxNodeCount) {
+        if (!limited || maxNodeCount == 0) {
+            return;
+        }
+        if (node.depth >= maxDepth) {
+            throw new EvaluationLimitExceededError("Max depth " + maxDepth + " is exceeded at " + node);
+        }
+        if (nodes.get() + maxNodeCount > maxNodes) {
+            throw new EvaluationLimitExceededError("Max number of nodes " + maxNodes + " is exceeded at " + node);
+        }
+    }
+
+    /**
+     * Called before attributes and children of a node are published.
+     *
+     * @param node      expanded node
+     * @param nodeCount number of created attributes and children
+     * @throws EvaluationLimitExceededError if one of limits is exceeded
+     */
+    void onExpand(Node node, int nodeCount) {
+        if (recording) {
+            createdNodes.add(nodeCount);
+        }
+        if (!limited || nodeCount == 0) {
+            return;
+        }
+        if (node.depth >= maxDepth) {
+            throw new EvaluationLimitExceededError("Max depth " + maxDepth + " is exceeded at " + node);
+        }
+        if (nodes.addAndGet(nodeCount) > maxNodes) {
+            throw new EvaluationLimitExceededError("Max number of nodes " + maxNodes + " is exceeded at " + node);
+        }
+        if (timeLimitNanos != Long.MAX_VALUE && System.nanoTime() - startTime > timeLimitNanos) {
+            throw new EvaluationLimitExceededError("Time limit of "
+                    + TimeUnit.NANOSECONDS.toMillis(timeLimitNanos) + " ms is exceeded at " + node);
+        }
+    }
+}
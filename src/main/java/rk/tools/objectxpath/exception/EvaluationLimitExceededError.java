@@ -0,0 +1,11 @@
+package rk.tools.objectxpath.exception;
+
+/**
+ * Thrown when evaluation of a query exceeds one of configured limits
+ * (max depth, max number of nodes or time limit).
+ */
+public class EvaluationLimitExceededError extends RuntimeException {
+    public EvaluationLimitExceededError(String message) {
+        super(message);
+    }
+}
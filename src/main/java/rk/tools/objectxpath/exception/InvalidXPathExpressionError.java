@@ -4,4 +4,15 @@ public class InvalidXPathExpressionError extends RuntimeException {
     public InvalidXPathExpressionError(String xPath) {
         super("Provided XPath expression is invalid - " + xPath);
     }
+
+    public InvalidXPathExpressionError(String xPath, int position) {
+        super("Provided XPath expression is invalid - " + xPath + " (at position " + position + ")");
+    }
+
+    /**
+     * Reports the same expression again, with the error thrown when it was first validated as the cause.
+     */
+    public InvalidXPathExpressionError(InvalidXPathExpressionError cause) {
+        super(cause.getMessage(), cause);
+    }
 }
@@ -0,0 +1,125 @@
+package rk.tools.objectxpath.xpath;
+
+/**
+ * String literal of a predicate converted once into values of types it can be compared with.
+ * <p>
+ * A value matches a literal when its string representation ({@link String#valueOf(Object)})
+ * equals the literal, but values of primitive types are compared without converting them into strings:
+ * e.g. literal {@code '2'} matches {@code int} and {@code long} values {@code 2},
+ * while {@code '02'} matches no number as numbers are never converted into such a string.
+ */
+public final class Literal {
+    public final String text;
+    private final boolean integral;
+    private final long longValue;
+    private final boolean doubleNumber;
+    private final long doubleBits;
+    private final boolean floatNumber;
+    private final int floatBits;
+    private final boolean bool;
+    private final boolean booleanValue;
+
+    private Literal(String text) {
+        this.text = text;
+        Long longValue = parseLong(text);
+        this.integral = longValue != null;
+        this.longValue = integral ? longValue : 0;
+        Double doubleValue = parseDouble(text);
+        this.doubleNumber = doubleValue != null && Double.toString(doubleValue).equals(text);
+        this.doubleBits = doubleNumber ? Double.doubleToLongBits(doubleValue) : 0;
+        this.floatNumber = doubleValue != null && Float.toString(doubleValue.floatValue()).equals(text);
+        this.floatBits = floatNumber ? Float.floatToIntBits(doubleValue.floatValue()) : 0;
+        this.bool = text.equals("true") || text.equals("false");
+        this.booleanValue = text.equals("true");
+    }
+
+    public static Literal of(String text) {
+        return new Literal(text);
+    }
+
+    /**
+     * Compares {@code long}, {@code int}, {@code short} and {@code byte} values.
+     */
+    public boolean matches(long value) {
+        return integral && value == longValue;
+    }
+
+    public boolean matches(double value) {
+        return doubleNumber && Double.doubleToLongBits(value) == doubleBits;
+    }
+
+    public boolean matches(float value) {
+        return floatNumber && Float.floatToIntBits(value) == floatBits;
+    }
+
+    public boolean matches(boolean value) {
+        return bool && value == booleanValue;
+    }
+
+    public boolean matches(char value) {
+        return text.length() == 1 && text.charAt(0) == value;
+    }
+
+    /**
+     * Compares a value of any type, {@code null} never matches.
+     */
+    public boolean matches(Object value) {
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof String) {
+            return text.equals(value);
+        }
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return matches(((Number) value).longValue());
+        }
+        if (value instanceof Double) {
+            return matches(((Double) value).doubleValue());
+        }
+        if (value instanceof Float) {
+            return matches(((Float) value).floatValue());
+        }
+        if (value instanceof Boolean) {
+            return matches(((Boolean) value).booleanValue());
+        }
+        if (value instanceof Character) {
+            return matches(((Character) value).charValue());
+        }
+        return text.equals(String.valueOf(value));
+    }
+
+    /**
+     * @return parsed value if the text is exactly how the value is converted into a string
+     */
+    private static Long parseLong(String text) {
+        try {
+            long value = Long.parseLong(text);
+            return Long.toString(value).equals(text) ? value : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Double parseDouble(String text) {
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof Literal && text.equals(((Literal) o).text));
+    }
+
+    @Override
+    public int hashCode() {
+        return text.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -1,13 +1,34 @@
 package rk.tools.objectxpath.xpath;
 
+import java.util.Objects;
+
 public class NodeWithAttribute extends XPathNode {
-    public String attrName;
-    public Object attrValue;
+    public final String attrName;
+    public final Object attrValue;
+    /**
+     * {@link #attrValue} prepared for comparison with attribute values.
+     */
+    public final Literal literal;
 
     public NodeWithAttribute(XPathNodeType type, NodeRelationship relationship, String name,
                              int startIndex, int endIndex, String attrName, Object attrValue) {
         super(type, relationship, name, startIndex, endIndex);
         this.attrName = attrName;
         this.attrValue = attrValue;
+        this.literal = Literal.of(String.valueOf(attrValue));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!super.equals(o)) {
+            return false;
+        }
+        NodeWithAttribute that = (NodeWithAttribute) o;
+        return Objects.equals(attrName, that.attrName) && Objects.equals(attrValue, that.attrValue);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), attrName, attrValue);
     }
 }
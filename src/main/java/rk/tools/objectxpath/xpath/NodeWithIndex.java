@@ -1,11 +1,21 @@
 package rk.tools.objectxpath.xpath;
 
 public class NodeWithIndex extends XPathNode {
-    public int index;
+    public final int index;
 
     public NodeWithIndex(XPathNodeType type, NodeRelationship relationship, String name,
                          int startIndex, int endIndex, int index) {
         super(type, relationship, name, startIndex, endIndex);
         this.index = index;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        return super.equals(o) && index == ((NodeWithIndex) o).index;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + index;
+    }
 }
@@ -0,0 +1,27 @@
+package rk.tools.objectxpath.xpath;
+
+import java.util.Objects;
+
+public class NodeWithPredicate extends XPathNode {
+    public final PredicateExpression predicate;
+
+    public NodeWithPredicate(XPathNodeType type, NodeRelationship relationship, String name,
+                             int startIndex, int endIndex, PredicateExpression predicate) {
+        super(type, relationship, name, startIndex, endIndex);
+        this.predicate = predicate;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!super.equals(o)) {
+            return false;
+        }
+        NodeWithPredicate that = (NodeWithPredicate) o;
+        return Objects.equals(predicate, that.predicate);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), predicate);
+    }
+}
@@ -0,0 +1,265 @@
+package rk.tools.objectxpath.xpath;
+
+/**
+ * Parsed predicate of {@link NodeWithPredicate}.
+ * <p>
+ * Supported expressions: comparisons ({@code =, !=, <, <=, >, >=}) of attributes, literals,
+ * {@code position()} and {@code last()}; {@code and}, {@code or}, {@code not(...)},
+ * parentheses and bare attributes ({@code [@id]}, true if attribute is not {@code null}).
+ * <p>
+ * Expressions are equal if their canonical string representations are equal.
+ */
+public abstract class PredicateExpression {
+
+    private PredicateExpression() {
+    }
+
+    /**
+     * @return {@code true} if expression depends on position of a node ({@code position()} or {@code last()})
+     */
+    public abstract boolean isPositional();
+
+    /**
+     * @return {@code true} if expression uses {@code last()},
+     * so all candidate nodes have to be found before any of them is checked
+     */
+    public abstract boolean usesLast();
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof PredicateExpression && toString().equals(o.toString()));
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+    /**
+     * {@code and} or {@code or} of two expressions, the right one is evaluated only if needed.
+     */
+    public static final class Logical extends PredicateExpression {
+        public final boolean and;
+        public final PredicateExpression left;
+        public final PredicateExpression right;
+
+        public Logical(boolean and, PredicateExpression left, PredicateExpression right) {
+            this.and = and;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean isPositional() {
+            return left.isPositional() || right.isPositional();
+        }
+
+        @Override
+        public boolean usesLast() {
+            return left.usesLast() || right.usesLast();
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + (and ? " and " : " or ") + right + ")";
+        }
+    }
+
+    public static final class Not extends PredicateExpression {
+        public final PredicateExpression operand;
+
+        public Not(PredicateExpression operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public boolean isPositional() {
+            return operand.isPositional();
+        }
+
+        @Override
+        public boolean usesLast() {
+            return operand.usesLast();
+        }
+
+        @Override
+        public String toString() {
+            return "not(" + operand + ")";
+        }
+    }
+
+    /**
+     * Bare attribute, true if a node has not {@code null} attribute with such name.
+     */
+    public static final class AttributeExists extends PredicateExpression {
+        public final String attrName;
+
+        public AttributeExists(String attrName) {
+            this.attrName = attrName;
+        }
+
+        @Override
+        public boolean isPositional() {
+            return false;
+        }
+
+        @Override
+        public boolean usesLast() {
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "@" + attrName;
+        }
+    }
+
+    public static final class Comparison extends PredicateExpression {
+        public final Operand left;
+        public final Operator operator;
+        public final Operand right;
+
+        public Comparison(Operand left, Operator operator, Operand right) {
+            this.left = left;
+            this.operator = operator;
+            this.right = right;
+        }
+
+        @Override
+        public boolean isPositional() {
+            return left.isPositional() || right.isPositional();
+        }
+
+        @Override
+        public boolean usesLast() {
+            return left.type == OperandType.LAST || right.type == OperandType.LAST;
+        }
+
+        @Override
+        public String toString() {
+            return left + " " + operator.symbol + " " + right;
+        }
+    }
+
+    public enum Operator {
+        EQUAL("="),
+        NOT_EQUAL("!="),
+        LESS("<"),
+        LESS_OR_EQUAL("<="),
+        GREATER(">"),
+        GREATER_OR_EQUAL(">=");
+
+        public final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        /**
+         * Compares two numbers, {@code NaN} is not equal to anything (including itself).
+         */
+        public boolean compare(double left, double right) {
+            switch (this) {
+                case EQUAL:
+                    return left == right;
+                case NOT_EQUAL:
+                    return left != right;
+                case LESS:
+                    return left < right;
+                case LESS_OR_EQUAL:
+                    return left <= right;
+                case GREATER:
+                    return left > right;
+                default:
+                    return left >= right;
+            }
+        }
+    }
+
+    public enum OperandType {
+        ATTRIBUTE,
+        /**
+         * Value of the node itself ({@code .}), e.g. an item of a collection or an array.
+         */
+        SELF,
+        POSITION,
+        LAST,
+        STRING,
+        NUMBER
+    }
+
+    /**
+     * Operand of a comparison. Literals are converted into typed values once, when a query is parsed.
+     */
+    public static final class Operand {
+        public final OperandType type;
+        /**
+         * Attribute name for attributes, literal text for literals.
+         */
+        public final String text;
+        /**
+         * Literal prepared for comparison with attribute values ({@code null} for other operands).
+         */
+        public final Literal literal;
+        /**
+         * Numeric value of a literal ({@code NaN} if literal is not a number).
+         */
+        public final double number;
+
+        private Operand(OperandType type, String text) {
+            this.type = type;
+            this.text = text;
+            boolean literalOperand = type == OperandType.STRING || type == OperandType.NUMBER;
+            this.literal = literalOperand ? Literal.of(text) : null;
+            this.number = literalOperand ? parseNumber(text) : Double.NaN;
+        }
+
+        public static Operand attribute(String name) {
+            return new Operand(OperandType.ATTRIBUTE, name);
+        }
+
+        public static Operand self() {
+            return new Operand(OperandType.SELF, ".");
+        }
+
+        public static Operand position() {
+            return new Operand(OperandType.POSITION, "position()");
+        }
+
+        public static Operand last() {
+            return new Operand(OperandType.LAST, "last()");
+        }
+
+        public static Operand string(String text) {
+            return new Operand(OperandType.STRING, text);
+        }
+
+        public static Operand number(String text) {
+            return new Operand(OperandType.NUMBER, text);
+        }
+
+        boolean isPositional() {
+            return type == OperandType.POSITION || type == OperandType.LAST;
+        }
+
+        private static double parseNumber(String text) {
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+
+        @Override
+        public String toString() {
+            switch (type) {
+                case ATTRIBUTE:
+                    return "@" + text;
+                case STRING:
+                    return text.indexOf('\'') < 0 ? "'" + text + "'" : "\"" + text + "\"";
+                default:
+                    return text;
+            }
+        }
+    }
+}
@@ -1,11 +1,13 @@
 package rk.tools.objectxpath.xpath;
 
+import java.util.Objects;
+
 public class XPathNode {
-    public XPathNodeType type;
-    public NodeRelationship relationship;
-    public String name;
-    public int startIndex;
-    public int endIndex;
+    public final XPathNodeType type;
+    public final NodeRelationship relationship;
+    public final String name;
+    public final int startIndex;
+    public final int endIndex;
 
     public XPathNode(XPathNodeType type, NodeRelationship relationship, String name, int startIndex,
                      int endIndex) {
@@ -15,4 +17,27 @@ public class XPathNode {
         this.startIndex = startIndex;
         this.endIndex = endIndex;
     }
+
+    /**
+     * XPath nodes are equal if they select the same nodes,
+     * position in XPath string is not taken into account.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        XPathNode xPathNode = (XPathNode) o;
+        return type == xPathNode.type
+                && relationship == xPathNode.relationship
+                && Objects.equals(name, xPathNode.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, relationship, name);
+    }
 }
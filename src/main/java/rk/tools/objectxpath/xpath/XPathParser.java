@@ -0,0 +1,368 @@
+package rk.tools.objectxpath.xpath;
+
+import rk.tools.objectxpath.exception.InvalidXPathExpressionError;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Single pass XPath parser.
+ * <p>
+ * Converts XPath string into a list of {@link XPathNode}
+ * in a single pass (with a short lookahead inside predicates) and without creating intermediate substrings.
+ * Predicates with only a position ({@code [2]}) or an attribute equality ({@code [@id='2']})
+ * are represented by {@link NodeWithIndex} and {@link NodeWithAttribute},
+ * other predicates are parsed into {@link PredicateExpression}.
+ * Start and end indexes of created nodes point to the original XPath string.
+ */
+public class XPathParser {
+    private final String xPath;
+    private int position;
+
+    private XPathParser(String xPath) {
+        this.xPath = xPath;
+    }
+
+    /**
+     * Parses provided XPath string.
+     *
+     * @param xPath XPath string
+     * @return list of {@link XPathNode}
+     * @throws InvalidXPathExpressionError if XPath string is not supported
+     */
+    public static List<XPathNode> parse(String xPath) {
+        requireNonNull(xPath, "xPath cannot be null");
+        return new XPathParser(xPath).parse();
+    }
+
+    private List<XPathNode> parse() {
+        List<XPathNode> nodes = new ArrayList<>();
+        if (xPath.length() == 1 && xPath.charAt(0) == '/') {
+            nodes.add(new XPathNode(XPathNodeType.ROOT_NODE, NodeRelationship.CHILD, xPath, 0, 1));
+            return nodes;
+        }
+        if (xPath.isEmpty()) {
+            throw error();
+        }
+        while (position < xPath.length()) {
+            nodes.add(parseStep());
+        }
+        return nodes;
+    }
+
+    /**
+     * Parses a single step: '/name', '//name', '/*', '/..', '/@attr'
+     * with an optional predicate.
+     */
+    private XPathNode parseStep() {
+        int startIndex = position;
+        expect('/');
+        NodeRelationship relationship = NodeRelationship.CHILD;
+        if (consume('/')) {
+            relationship = NodeRelationship.DESCENDANT;
+        }
+        if (consume('.')) {
+            expect('.');
+            return new XPathNode(XPathNodeType.PARENT_NODE, relationship, "..", startIndex, position);
+        }
+        if (consume('@')) {
+            String attribute = parseName();
+            return new AttributeNode(attribute, relationship, startIndex, position);
+        }
+        boolean anyNode = consume('*');
+        String name = anyNode ? "*" : parseName();
+        if (!consume('[')) {
+            XPathNodeType type = anyNode ? XPathNodeType.ANY_NODE : XPathNodeType.SIMPLE_NODE;
+            return new XPathNode(type, relationship, name, startIndex, position);
+        }
+        skipWhitespaces();
+        if (position < xPath.length() && isDigit(xPath.charAt(position)) && closesPredicate(skipDigits(position))) {
+            int index = parseNumber();
+            skipWhitespaces();
+            expect(']');
+            XPathNodeType type = anyNode ? XPathNodeType.ANY_NODE_WITH_INDEX : XPathNodeType.NODE_WITH_INDEX;
+            return new NodeWithIndex(type, relationship, name, startIndex, position, index);
+        }
+        PredicateExpression predicate;
+        if (xPath.startsWith("last", position) && closesPredicate(skipFunction(position, "last"))) {
+            consumeFunction("last");
+            predicate = new PredicateExpression.Comparison(PredicateExpression.Operand.position(),
+                    PredicateExpression.Operator.EQUAL, PredicateExpression.Operand.last());
+        } else {
+            predicate = parseOr();
+        }
+        skipWhitespaces();
+        expect(']');
+        if (predicate instanceof PredicateExpression.Comparison) {
+            PredicateExpression.Comparison comparison = (PredicateExpression.Comparison) predicate;
+            if (comparison.left.type == PredicateExpression.OperandType.ATTRIBUTE
+                    && comparison.operator == PredicateExpression.Operator.EQUAL
+                    && comparison.right.type == PredicateExpression.OperandType.STRING) {
+                XPathNodeType type = anyNode ? XPathNodeType.ANY_NODE_WITH_ATTRIBUTE : XPathNodeType.NODE_WITH_ATTRIBUTE;
+                return new NodeWithAttribute(type, relationship, name, startIndex, position,
+                        comparison.left.text, comparison.right.text);
+            }
+        }
+        XPathNodeType type = anyNode ? XPathNodeType.ANY_NODE_WITH_PREDICATE : XPathNodeType.NODE_WITH_PREDICATE;
+        return new NodeWithPredicate(type, relationship, name, startIndex, position, predicate);
+    }
+
+    private PredicateExpression parseOr() {
+        PredicateExpression left = parseAnd();
+        while (consumeKeyword("or")) {
+            left = new PredicateExpression.Logical(false, left, parseAnd());
+        }
+        return left;
+    }
+
+    private PredicateExpression parseAnd() {
+        PredicateExpression left = parseUnary();
+        while (consumeKeyword("and")) {
+            left = new PredicateExpression.Logical(true, left, parseUnary());
+        }
+        return left;
+    }
+
+    private PredicateExpression parseUnary() {
+        if (consumeKeyword("not")) {
+            skipWhitespaces();
+            expect('(');
+            PredicateExpression operand = parseOr();
+            skipWhitespaces();
+            expect(')');
+            return new PredicateExpression.Not(operand);
+        }
+        skipWhitespaces();
+        if (consume('(')) {
+            PredicateExpression expression = parseOr();
+            skipWhitespaces();
+            expect(')');
+            return expression;
+        }
+        return parseComparison();
+    }
+
+    /**
+     * Parses a comparison or a bare attribute.
+     */
+    private PredicateExpression parseComparison() {
+        PredicateExpression.Operand left = parseOperand();
+        skipWhitespaces();
+        PredicateExpression.Operator operator = parseOperator();
+        if (operator == null) {
+            if (left.type != PredicateExpression.OperandType.ATTRIBUTE) {
+                throw error();
+            }
+            return new PredicateExpression.AttributeExists(left.text);
+        }
+        return new PredicateExpression.Comparison(left, operator, parseOperand());
+    }
+
+    private PredicateExpression.Operand parseOperand() {
+        skipWhitespaces();
+        if (consume('@')) {
+            return PredicateExpression.Operand.attribute(parseName());
+        }
+        if (position < xPath.length() && xPath.charAt(position) == '.'
+                && (position + 1 == xPath.length() || (xPath.charAt(position + 1) != '.' && !isDigit(xPath.charAt(position + 1))))) {
+            position++;
+            return PredicateExpression.Operand.self();
+        }
+        if (position < xPath.length() && (xPath.charAt(position) == '\'' || xPath.charAt(position) == '"')) {
+            return PredicateExpression.Operand.string(parseLiteral());
+        }
+        if (consumeFunction("position")) {
+            return PredicateExpression.Operand.position();
+        }
+        if (consumeFunction("last")) {
+            return PredicateExpression.Operand.last();
+        }
+        return PredicateExpression.Operand.number(parseDecimal());
+    }
+
+    private PredicateExpression.Operator parseOperator() {
+        if (consume('=')) {
+            return PredicateExpression.Operator.EQUAL;
+        }
+        if (consume('!')) {
+            expect('=');
+            return PredicateExpression.Operator.NOT_EQUAL;
+        }
+        if (consume('<')) {
+            return consume('=') ? PredicateExpression.Operator.LESS_OR_EQUAL : PredicateExpression.Operator.LESS;
+        }
+        if (consume('>')) {
+            return consume('=') ? PredicateExpression.Operator.GREATER_OR_EQUAL : PredicateExpression.Operator.GREATER;
+        }
+        return null;
+    }
+
+    /**
+     * Parses decimal number (-?[0-9]+(.[0-9]+)?).
+     */
+    private String parseDecimal() {
+        int start = position;
+        consume('-');
+        int digits = position;
+        position = skipDigits(position);
+        if (digits == position) {
+            throw error();
+        }
+        if (consume('.')) {
+            digits = position;
+            position = skipDigits(position);
+            if (digits == position) {
+                throw error();
+            }
+        }
+        return xPath.substring(start, position);
+    }
+
+    /**
+     * Consumes a keyword ('and', 'or', 'not') which is not a part of a longer name.
+     */
+    private boolean consumeKeyword(String keyword) {
+        skipWhitespaces();
+        int end = position + keyword.length();
+        if (!xPath.startsWith(keyword, position) || (end < xPath.length() && isNameChar(xPath.charAt(end)))) {
+            return false;
+        }
+        position = end;
+        return true;
+    }
+
+    /**
+     * Consumes a function call without arguments ('last()', 'position()').
+     */
+    private boolean consumeFunction(String function) {
+        int end = skipFunction(position, function);
+        if (end < 0) {
+            return false;
+        }
+        position = end;
+        return true;
+    }
+
+    /**
+     * @return position after a function call without arguments starting at {@code from} or {@code -1}
+     */
+    private int skipFunction(int from, String function) {
+        if (!xPath.startsWith(function, from)) {
+            return -1;
+        }
+        int i = skipWhitespaces(from + function.length());
+        if (i >= xPath.length() || xPath.charAt(i) != '(') {
+            return -1;
+        }
+        i = skipWhitespaces(i + 1);
+        return i < xPath.length() && xPath.charAt(i) == ')' ? i + 1 : -1;
+    }
+
+    /**
+     * Checks whether there is nothing but whitespaces between {@code from} and the end of a predicate.
+     */
+    private boolean closesPredicate(int from) {
+        if (from < 0) {
+            return false;
+        }
+        int i = skipWhitespaces(from);
+        return i < xPath.length() && xPath.charAt(i) == ']';
+    }
+
+    private int skipDigits(int from) {
+        while (from < xPath.length() && isDigit(xPath.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private int skipWhitespaces(int from) {
+        while (from < xPath.length() && Character.isWhitespace(xPath.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Parses node or attribute name ([a-zA-Z0-9_-]+).
+     */
+    private String parseName() {
+        int start = position;
+        while (position < xPath.length() && isNameChar(xPath.charAt(position))) {
+            position++;
+        }
+        if (start == position) {
+            throw error();
+        }
+        return xPath.substring(start, position);
+    }
+
+    /**
+     * Parses string literal enclosed in single or double quotes.
+     */
+    private String parseLiteral() {
+        if (position >= xPath.length()) {
+            throw error();
+        }
+        char quote = xPath.charAt(position);
+        if (quote != '\'' && quote != '"') {
+            throw error();
+        }
+        int end = xPath.indexOf(quote, position + 1);
+        if (end < 0) {
+            throw error();
+        }
+        String literal = xPath.substring(position + 1, end);
+        position = end + 1;
+        return literal;
+    }
+
+    private int parseNumber() {
+        int start = position;
+        int number = 0;
+        while (position < xPath.length() && isDigit(xPath.charAt(position))) {
+            int digit = xPath.charAt(position) - '0';
+            if (number > (Integer.MAX_VALUE - digit) / 10) { //overflow
+                throw error();
+            }
+            number = number * 10 + digit;
+            position++;
+        }
+        if (start == position) {
+            throw error();
+        }
+        return number;
+    }
+
+    private void skipWhitespaces() {
+        position = skipWhitespaces(position);
+    }
+
+    private boolean consume(char c) {
+        if (position < xPath.length() && xPath.charAt(position) == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) {
+        if (!consume(c)) {
+            throw error();
+        }
+    }
+
+    private InvalidXPathExpressionError error() {
+        return new InvalidXPathExpressionError(xPath, position);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isNameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c) || c == '_' || c == '-';
+    }
+}
@@ -0,0 +1,64 @@
+package rk.tools.objectxpath;
+
+import jdk.jfr.EventType;
+
+/**
+ * Emits JDK Flight Recorder events {@code oxpy.QueryEvaluation} and {@code oxpy.TreeBuild}.
+ * <p>
+ * Java 11+ version of the class: events are created only if they're enabled in a running recording,
+ * they're committed only if they take longer than their threshold
+ * (e.g. {@code Recording.enable("oxpy.QueryEvaluation").withThreshold(Duration.ofMillis(5))}).
+ */
+final class FlightRecorderEvents {
+    private static final EventType evaluationType = EventType.getEventType(QueryEvaluationEvent.class);
+    private static final EventType treeBuildType = EventType.getEventType(TreeBuildEvent.class);
+
+    private FlightRecorderEvents() {
+    }
+
+    static Object beginEvaluation() {
+        if (!evaluationType.isEnabled()) {
+            return null;
+        }
+        QueryEvaluationEvent event = new QueryEvaluationEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitEvaluation(Object event, String query, Object root, long nodes, long results) {
+        if (event == null) {
+            return;
+        }
+        QueryEvaluationEvent evaluation = (QueryEvaluationEvent) event;
+        evaluation.end();
+        if (evaluation.shouldCommit()) {
+            evaluation.query = query;
+            evaluation.rootClass = root.getClass();
+            evaluation.nodes = nodes;
+            evaluation.results = results;
+            evaluation.commit();
+        }
+    }
+
+    static Object beginTreeBuild() {
+        if (!treeBuildType.isEnabled()) {
+            return null;
+        }
+        TreeBuildEvent event = new TreeBuildEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitTreeBuild(Object event, Object root, long nodes) {
+        if (event == null) {
+            return;
+        }
+        TreeBuildEvent treeBuild = (TreeBuildEvent) event;
+        treeBuild.end();
+        if (treeBuild.shouldCommit()) {
+            treeBuild.rootClass = root.getClass();
+            treeBuild.nodes = nodes;
+            treeBuild.commit();
+        }
+    }
+}
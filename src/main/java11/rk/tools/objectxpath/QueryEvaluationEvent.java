@@ -0,0 +1,31 @@
+package rk.tools.objectxpath;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Evaluation of a query which took longer than the threshold (20 ms by default).
+ */
+@Name("oxpy.QueryEvaluation")
+@Label("OXPy Query Evaluation")
+@Category("OXPy")
+@Description("Evaluation of an XPath query for an object graph")
+@Threshold("20 ms")
+class QueryEvaluationEvent extends jdk.jfr.Event {
+    @Label("Query")
+    String query;
+
+    @Label("Root Class")
+    Class<?> rootClass;
+
+    @Label("Nodes")
+    @Description("Number of object tree nodes created by the evaluation")
+    long nodes;
+
+    @Label("Results")
+    @Description("Number of matches")
+    long results;
+}
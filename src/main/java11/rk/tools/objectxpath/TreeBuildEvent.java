@@ -0,0 +1,25 @@
+package rk.tools.objectxpath;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Conversion of a whole object graph into a tree (e.g. for {@link ObjectIndex})
+ * which took longer than the threshold (20 ms by default).
+ */
+@Name("oxpy.TreeBuild")
+@Label("OXPy Tree Build")
+@Category("OXPy")
+@Description("Conversion of a whole object graph into a tree")
+@Threshold("20 ms")
+class TreeBuildEvent extends jdk.jfr.Event {
+    @Label("Root Class")
+    Class<?> rootClass;
+
+    @Label("Nodes")
+    @Description("Number of elements and attributes of the tree")
+    long nodes;
+}
@@ -0,0 +1,65 @@
+package rk.tools.objectxpath;
+
+import org.apache.commons.jxpath.JXPathContext;
+import org.junit.jupiter.api.Test;
+import rk.tools.objectxpath.benchmark.DifferentialQueries;
+import rk.tools.objectxpath.benchmark.DifferentialQueries.QueryPair;
+import rk.tools.objectxpath.benchmark.GraphGenerator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Runs the same generated queries through OXPy and commons-jxpath and checks that results are the same.
+ */
+class JXPathDifferentialTest {
+
+    private final OXPy oxpy = new OXPy();
+
+    @Test
+    void sameResultsAsJXPath() {
+        Random random = new Random(42);
+        for (int width : new int[]{1, 3, 5}) {
+            GraphGenerator.Fleet fleet = new GraphGenerator(width, 1).generate();
+            List<String> gearIds = oxpy.evaluateInto("//gear/@id", fleet, String.class, new ArrayList<>());
+            JXPathContext context = JXPathContext.newContext(fleet);
+            for (QueryPair query : DifferentialQueries.generateAll(10, width, gearIds, random)) {
+                List<Object> expected = new ArrayList<>();
+                @SuppressWarnings("unchecked") //JXPath returns a raw iterator
+                Iterator<Object> matches = context.iterate(query.jxpath);
+                matches.forEachRemaining(expected::add);
+                List<Object> actual = oxpy.evaluateInto(query.oxpy, fleet, Object.class, new ArrayList<>());
+                if (query.isOrdered()) {
+                    assertEquals(expected, actual, query.toString());
+                } else {
+                    assertEquals(counts(expected), counts(actual), query.toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    void queriesMatchSomething() {
+        GraphGenerator.Fleet fleet = new GraphGenerator(3, 1).generate();
+        for (String kind : DifferentialQueries.kinds()) {
+            QueryPair query = DifferentialQueries.generate(kind, 3, "3", new Random(1));
+            if (!kind.equals("positionPredicate")) {
+                assertFalse(oxpy.evaluateInto(query.oxpy, fleet, Object.class, new ArrayList<>()).isEmpty(),
+                        query.toString());
+            }
+        }
+    }
+
+    private static Map<Object, Integer> counts(List<Object> values) {
+        Map<Object, Integer> counts = new HashMap<>();
+        values.forEach(value -> counts.merge(value, 1, Integer::sum));
+        return counts;
+    }
+}
@@ -1,14 +1,34 @@
 package rk.tools.objectxpath;
 
 import org.junit.jupiter.api.Test;
+import rk.tools.objectxpath.exception.EvaluationLimitExceededError;
 import rk.tools.objectxpath.exception.InvalidXPathExpressionError;
 import rk.tools.objectxpath.object.Characteristic;
+import rk.tools.objectxpath.object.Engine;
+import rk.tools.objectxpath.object.Gear;
 import rk.tools.objectxpath.object.Sedan;
 
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static rk.tools.objectxpath.Lists.arrayListOf;
@@ -115,9 +135,195 @@ class OXPyTest {
     void mapWithNumberKeys() {
         Map<Integer, String> map = new HashMap<>();
         map.put(1, "item1");
-        map.put(2, "item1");
-        //todo add support for map with number keys
-        assertThrows(InvalidXPathExpressionError.class, () -> oxpy.process("/1", map));
+        map.put(2, "item2");
+        map.put(-3, "item3");
+        assertEquals("item1", oxpy.process("/1", map).get());
+        assertEquals("item3", oxpy.process("/-3", map).get());
+        assertFalse(oxpy.process("/01", map).isPresent());
+        assertFalse(oxpy.process("/a", map).isPresent());
+        assertEquals(arrayListOf("item1", "item2", "item3"), oxpy.process("/*", map).get());
+
+        Map<Long, Map<TimeUnit, String>> nested = new TreeMap<>();
+        nested.put(10_000_000_000L, new EnumMap<>(TimeUnit.class));
+        nested.get(10_000_000_000L).put(TimeUnit.SECONDS, "s");
+        nested.get(10_000_000_000L).put(TimeUnit.DAYS, null);
+        assertEquals("s", oxpy.process("/10000000000/SECONDS", nested).get());
+        assertEquals("s", oxpy.process("//SECONDS", nested).get());
+        assertFalse(oxpy.process("/10000000000/DAYS", nested).isPresent());
+        assertEquals(1, oxpy.processStream("/10000000000/DAYS", nested).count());
+        assertFalse(oxpy.process("/10000000000/HOURS", nested).isPresent());
+        assertThrows(InvalidXPathExpressionError.class, () -> oxpy.process("/1a/", map));
+    }
+
+    @Test
+    void collectionPositionLookup() {
+        List<Characteristic> list = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            list.add(i % 10 == 0 ? null : new Characteristic(String.valueOf(i), "details"));
+        }
+        OXPy limited = new OXPy(new OXPyConfig().maxNodes(10));
+        for (List<Characteristic> items : arrayListOf(list, new LinkedList<>(list))) {
+            assertSame(list.get(1), limited.process("/characteristic[1]", items).get());
+            assertSame(list.get(12), limited.process("/characteristic[11]", items).get());
+            assertSame(list.get(99_999), limited.process("/*[90000]", items).get());
+            assertFalse(limited.process("/characteristic[90001]", items).isPresent());
+            assertFalse(limited.process("/gear[1]", items).isPresent());
+            assertEquals("12", limited.process("/characteristic[11]/@id", items).get());
+            assertThrows(EvaluationLimitExceededError.class, () -> limited.process("/characteristic[last()]", items));
+        }
+
+        ObjectIndex index = oxpy.index(list);
+        OXPy parallel = new OXPy(new OXPyConfig().parallelEvaluation(true).parallelThreshold(8));
+        for (String xPath : arrayListOf("/characteristic[5]", "/*[1000]/@id", "/characteristic[0]", "/item[1]")) {
+            assertEquals(oxpy.process(xPath, list), index.process(xPath), xPath);
+            assertEquals(oxpy.process(xPath, list), parallel.process(xPath, list), xPath);
+        }
+    }
+
+    @Test
+    void resultConsumer() {
+        List<?> expected = (List) oxpy.process("//characteristic/@id", sedan).get();
+        List<Object> values = new ArrayList<>();
+        assertEquals(expected.size(), oxpy.evaluate("//characteristic/@id", sedan, values::add));
+        assertEquals(expected, values);
+
+        values.clear();
+        assertEquals(2, oxpy.evaluate("//characteristic/@id", sedan, value -> values.add(value) && values.size() < 2));
+        assertEquals(expected.subList(0, 2), values);
+        assertEquals(0, oxpy.evaluate("//unknown", sedan, value -> fail("no matches expected")));
+        assertEquals(1, oxpy.evaluate("/engine/valve/@name", sedan, Objects::isNull));
+
+        List<Characteristic> characteristics = oxpy.evaluateInto("/gears/gear[1]//characteristic", sedan,
+                Characteristic.class, new ArrayList<>());
+        assertEquals(oxpy.process("/gears/gear[1]/characteristics/*", sedan).get(), characteristics);
+        Set<String> ids = oxpy.compile("//gear/@id").evaluateInto(sedan, String.class, new TreeSet<>());
+        assertEquals(new TreeSet<>(arrayListOf("111", "112", "113", "311")), ids);
+        assertThrows(ClassCastException.class,
+                () -> oxpy.evaluateInto("//gear", sedan, Characteristic.class, new ArrayList<>()));
+    }
+
+    @Test
+    void locate() {
+        assertEquals("[/]", oxpy.locate("/", sedan).toString());
+        assertEquals("[/gears/gear[1], /gears/gear[2], /gears/gear[3]]", oxpy.locate("/gears/gear", sedan).toString());
+        assertEquals("[/engine/@volume]", oxpy.locate("//engine/@volume", sedan).toString());
+        assertEquals("[/details/d1]", oxpy.locate("/details/d1", sedan).toString());
+        assertEquals("[/countryCodes/item[2]]", oxpy.locate("/countryCodes/item[2]", sedan).toString());
+        assertTrue(oxpy.locate("//unknown", sedan).isEmpty());
+
+        Match match = oxpy.locate("/gears/gear[2]/@name", sedan).get(0);
+        assertEquals("gear_2", match.getValue());
+        assertEquals("name", match.getName());
+        assertTrue(match.isAttribute());
+        assertEquals(3, match.getDepth());
+        assertEquals("/gears/gear[2]", match.getParent().getPath());
+        assertFalse(match.getParent().isAttribute());
+        assertEquals("/", match.getParent().getParent().getParent().getPath());
+        assertNull(match.getParent().getParent().getParent().getParent());
+
+        for (Match characteristic : oxpy.locate("//characteristic[@id > 20]", sedan)) {
+            assertSame(characteristic.getValue(), oxpy.processFirst(characteristic.getPath(), sedan).get());
+        }
+    }
+
+    @Test
+    void arrays() {
+        Telemetry telemetry = new Telemetry();
+        assertEquals(arrayListOf(3, 1, 4, 1, 5), oxpy.process("/readings/item", telemetry).get());
+        assertEquals(4, oxpy.process("/readings/item[3]", telemetry).get());
+        assertEquals(4, oxpy.process("/readings/*[3]", telemetry).get());
+        assertFalse(oxpy.process("/readings/item[6]", telemetry).isPresent());
+        assertFalse(oxpy.process("/readings/value[1]", telemetry).isPresent());
+        assertEquals(arrayListOf(4, 5), oxpy.process("/readings/item[. > 3]", telemetry).get());
+        assertEquals(arrayListOf(1, 1), oxpy.process("/readings/item[. = 1]", telemetry).get());
+        assertEquals(5, oxpy.process("/readings/item[last()]", telemetry).get());
+        assertEquals(arrayListOf(3, 5), oxpy.process("/readings/item[position() != 3 and . >= 3]", telemetry).get());
+        assertEquals(0.5, oxpy.process("/temperatures/item[. = '0.5']", telemetry).get());
+        assertFalse(oxpy.process("/temperatures/item[. = '0.50']", telemetry).isPresent());
+        assertEquals(true, oxpy.process("/flags/item[. = 'true']", telemetry).get());
+        assertEquals('b', oxpy.process("/code/item[2]", telemetry).get());
+        assertEquals(arrayListOf("a", "c"), oxpy.process("/tags/item[. != 'b']", telemetry).get());
+        assertEquals(arrayListOf(55, 77), oxpy.process("/countryCodes/item[. > 50]", sedan).get());
+
+        assertSame(telemetry.measurements[1], oxpy.process("/measurements/measurement[1]", telemetry).get());
+        assertSame(telemetry.measurements[2], oxpy.process("/measurements/measurement[@count = 2]", telemetry).get());
+        assertEquals(arrayListOf(1, 2), oxpy.process("//measurement/@count", telemetry).get());
+        assertEquals(arrayListOf(1, 2, 3), oxpy.process("/matrix/array[2]/item", telemetry).get());
+
+        assertEquals(5, oxpy.count("/readings/item", telemetry));
+        assertEquals(14, oxpy.sum("/readings/item", telemetry));
+        assertEquals(2, oxpy.count("/readings/*[. < 3]", telemetry));
+        assertEquals(12, oxpy.sum("/readings/item[. > 3 or position() = 1]", telemetry));
+        assertEquals(1.75, oxpy.sum("/temperatures/item", telemetry));
+        assertTrue(Double.isNaN(oxpy.sum("/flags/item", telemetry)));
+        assertEquals(2, oxpy.count("//measurement", telemetry));
+        assertEquals(3, oxpy.sum("//measurement/@count", telemetry));
+        assertEquals(0, oxpy.sum("/readings/value", telemetry));
+        assertEquals(1, oxpy.count("/", telemetry));
+        assertEquals(6, oxpy.sum("//array[2]/item", telemetry));
+
+        ObjectIndex index = oxpy.index(telemetry);
+        OXPy parallel = new OXPy(new OXPyConfig().parallelEvaluation(true).parallelThreshold(1));
+        for (String xPath : arrayListOf("/readings/item[. > 1]", "//item[2]", "/tags/*[last()]", "//*[. = 1]")) {
+            assertEquals(oxpy.process(xPath, telemetry), index.process(xPath), xPath);
+            assertEquals(oxpy.process(xPath, telemetry), parallel.process(xPath, telemetry), xPath);
+        }
+    }
+
+    @Test
+    void mapWithComplexKeys() {
+        Map<Key, String> map = new LinkedHashMap<>();
+        map.put(new Key(1), "first");
+        map.put(new Key(2), "second");
+        Map<String, Object> root = new HashMap<>();
+        root.put("map", map);
+        assertEquals(arrayListOf("first", "second"), oxpy.process("/map/*", root).get());
+        assertEquals("second", oxpy.process("/map/key-2", root).get());
+        assertFalse(oxpy.process("/map/key-3", root).isPresent());
+    }
+
+    @Test
+    void mapKeyLookup() {
+        Map<String, Integer> map = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            map.put("record-" + i, i);
+        }
+        OXPy limited = new OXPy(new OXPyConfig().maxNodes(10));
+        assertEquals(11, limited.process("/record-11", map).get());
+        assertThrows(EvaluationLimitExceededError.class, () -> limited.process("/*[1]", map));
+
+        OXPy parallel = new OXPy(new OXPyConfig().parallelEvaluation(true).parallelThreshold(8));
+        for (String xPath : arrayListOf("/record-11", "/record-100000", "//record-5", "/*[last()]")) {
+            assertEquals(oxpy.process(xPath, map), parallel.process(xPath, map), xPath);
+            assertEquals(oxpy.process(xPath, map), oxpy.index(map).process(xPath), xPath);
+        }
+
+        //children of expanded map nodes are found by name too
+        ObjectIndex index = oxpy.index(map);
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i, index.process("/record-" + i).get());
+        }
+        assertFalse(index.process("/record-100000").isPresent());
+
+        //map lookups find the same entries as iterating over the map
+        Map<Object, Object> mixed = new HashMap<>();
+        mixed.put("x", "string key");
+        mixed.put(1, "integer key");
+        Map<String, Object> identity = new IdentityHashMap<>();
+        identity.put(new String("key"), "identity key");
+        Map<String, Object> caseInsensitive = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        caseInsensitive.put("Foo", "case insensitive key");
+        Map<String, Object> maps = new HashMap<>();
+        maps.put("data", mixed);
+        maps.put("id", identity);
+        maps.put("ci", caseInsensitive);
+        assertEquals("integer key", oxpy.process("/data/1", maps).get());
+        assertEquals("string key", oxpy.process("/data/x", maps).get());
+        assertFalse(oxpy.process("/data/2", maps).isPresent());
+        assertEquals("identity key", oxpy.process("/id/key", maps).get());
+        assertFalse(oxpy.process("/ci/foo", maps).isPresent());
+        assertEquals("case insensitive key", oxpy.process("/ci/Foo", maps).get());
+        assertEquals("[/ci/Foo]", oxpy.locate("/ci/Foo", maps).toString());
     }
 
     @Test
@@ -162,6 +368,10 @@ class OXPyTest {
         assertTrue(result.isPresent());
         assertEquals(sedan.getGears().get(0).characteristics, result.get());
 
+        result = processXpath("/gears/gear[@id='111']/characteristics/characteristic[@id='22']");
+        assertTrue(result.isPresent());
+        assertEquals(sedan.getGears().get(0).characteristics.get(1), result.get());
+
         result = processXpath("/gears/gear[1]//characteristics/characteristic[1]/@details");
         assertTrue(result.isPresent());
         assertEquals(sedan.getGears().get(0).characteristics.get(0).details, result.get());
@@ -310,6 +520,596 @@ class OXPyTest {
         }
     }
 
+    @Test
+    void compiledQuery() throws Exception {
+        CompiledQuery query = oxpy.compile("//characteristic[@details='size:1']");
+        assertEquals("//characteristic[@details='size:1']", query.getQuery());
+        for (int i = 0; i < 2; i++) {
+            result = query.evaluate(sedan);
+            assertTrue(result.isPresent());
+            list = (List) result.get();
+            assertEquals(2, list.size());
+            assertEquals(sedan.getGears().get(0).characteristics.get(1), list.get(0));
+            assertEquals(sedan.getGears().get(2).characteristics.get(1), list.get(1));
+        }
+
+        Sedan other = Sedan.createDefault();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Optional<Object>>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                Sedan root = i % 2 == 0 ? sedan : other;
+                futures.add(executor.submit(() -> query.evaluate(root)));
+            }
+            for (Future<Optional<Object>> future : futures) {
+                assertEquals(2, ((List) future.get().get()).size());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThrows(UnsupportedOperationException.class, () -> query.getXPathNodes().clear());
+        assertThrows(NullPointerException.class, () -> query.evaluate(null));
+        assertThrows(NullPointerException.class, () -> oxpy.compile(null));
+        assertThrows(InvalidXPathExpressionError.class, () -> oxpy.compile("///"));
+    }
+
+    @Test
+    void queryCache() {
+        OXPy oxpy = new OXPy(new OXPyConfig().queryCacheSize(2));
+        QueryCache cache = oxpy.getQueryCache();
+
+        assertEquals(sedan.engine, oxpy.process("/engine", sedan).get());
+        assertEquals(sedan.engine, oxpy.process("/engine", sedan).get());
+        assertSame(oxpy.compile("/engine"), oxpy.compile("/engine"));
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        InvalidXPathExpressionError error =
+                assertThrows(InvalidXPathExpressionError.class, () -> oxpy.process("///", sedan));
+        InvalidXPathExpressionError cached =
+                assertThrows(InvalidXPathExpressionError.class, () -> oxpy.process("///", sedan));
+        assertNotSame(error, cached);
+        assertSame(error, cached.getCause());
+        assertEquals(error.getMessage(), cached.getMessage());
+        assertEquals(4, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, cache.size());
+
+        oxpy.process("/gears", sedan);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+
+        //least recently used entries are evicted in batches of maxSize / 8
+        OXPy batches = new OXPy(new OXPyConfig().queryCacheSize(16));
+        QueryCache batchCache = batches.getQueryCache();
+        CompiledQuery engine = batches.compile("/engine");
+        for (int i = 1; i < 16; i++) {
+            batches.compile("/gears/gear[" + i + "]");
+            assertSame(engine, batches.compile("/engine"));
+        }
+        batches.compile("/details");
+        assertEquals(2, batchCache.getEvictionCount());
+        assertEquals(15, batchCache.size());
+        assertSame(engine, batches.compile("/engine"));
+
+        OXPy noCache = new OXPy(new OXPyConfig().queryCacheSize(0));
+        assertNotSame(noCache.compile("/engine"), noCache.compile("/engine"));
+        assertEquals(0, noCache.getQueryCache().size());
+        assertEquals(0, noCache.getQueryCache().getHitCount());
+
+        OXPy noValidation = new OXPy(new OXPyConfig().validateQueries(false));
+        assertEquals(sedan.engine, noValidation.process("/engine", sedan).get());
+
+        assertThrows(IllegalArgumentException.class, () -> new OXPyConfig().queryCacheSize(-1));
+    }
+
+    @Test
+    void lazyTree() {
+        //materials map is not visited by queries below so it should never be traversed
+        sedan.materials = new HashMap<Integer, String>() {
+            {
+                put(1, "steel");
+            }
+
+            @Override
+            public Set<Map.Entry<Integer, String>> entrySet() {
+                throw new AssertionError("materials should not be traversed");
+            }
+        };
+        result = processXpath("/engine/valve/@id");
+        assertTrue(result.isPresent());
+        assertEquals(sedan.engine.valve.getId(), result.get());
+
+        result = processXpath("/gears/gear[2]/@name");
+        assertTrue(result.isPresent());
+        assertEquals("gear_2", result.get());
+
+        assertThrows(AssertionError.class, () -> processXpath("/materials/*"));
+    }
+
+    @Test
+    void firstMatchAndStream() {
+        result = oxpy.processFirst("//characteristic[@details='size:1']", sedan);
+        assertTrue(result.isPresent());
+        assertEquals(sedan.getGears().get(0).characteristics.get(1), result.get());
+
+        result = oxpy.processFirst("//characteristic[@details='none']", sedan);
+        assertFalse(result.isPresent());
+
+        result = oxpy.process("//characteristic", sedan, 2);
+        list = (List) result.get();
+        assertEquals(2, list.size());
+        assertEquals(sedan.getGears().get(0).characteristics.get(0), list.get(0));
+        assertEquals(sedan.getGears().get(0).characteristics.get(1), list.get(1));
+
+        result = oxpy.process("//characteristic", sedan, 1);
+        assertEquals(sedan.getGears().get(0).characteristics.get(0), result.get());
+        assertThrows(IllegalArgumentException.class, () -> oxpy.process("//characteristic", sedan, 0));
+
+        List<Object> characteristics = oxpy.processStream("//characteristic", sedan).collect(Collectors.toList());
+        assertEquals(oxpy.process("//characteristic", sedan).get(), characteristics);
+        assertEquals(0, oxpy.processStream("/details/d3", sedan).count());
+    }
+
+    @Test
+    void earlyTermination() {
+        //materials map is visited right after details so it is only traversed if evaluation goes further
+        sedan.materials = new HashMap<Integer, String>() {
+            {
+                put(1, "steel");
+            }
+
+            @Override
+            public Set<Map.Entry<Integer, String>> entrySet() {
+                throw new AssertionError("materials should not be traversed");
+            }
+        };
+        assertEquals(sedan.details, oxpy.processFirst("//*", sedan).get());
+        assertEquals(3, oxpy.processStream("//*", sedan).limit(3).count());
+        assertEquals(3, ((List) oxpy.process("//*", sedan, 3).get()).size());
+        assertEquals("details1", oxpy.processStream("//*", sedan).filter("details1"::equals).findFirst().get());
+
+        assertThrows(AssertionError.class, () -> oxpy.process("//*", sedan));
+    }
+
+    @Test
+    void descendantPruning() {
+        //classes of the model are observed when they're converted into nodes
+        oxpy.process("//*", sedan);
+        assertFalse(ClassMetadata.of(Characteristic.class).reachability().mayContainElement("valve"));
+        assertTrue(ClassMetadata.of(Characteristic.class).reachability().mayContainAttribute("details"));
+        assertFalse(ClassMetadata.of(Gear.class).reachability().mayContainElement("valve"));
+        assertTrue(ClassMetadata.of(Gear.class).reachability().mayContainElement("characteristic"));
+        assertTrue(ClassMetadata.of(Engine.class).reachability().mayContainElement("valve"));
+        assertTrue(ClassMetadata.of(Sedan.class).reachability().mayContainElement("valve"));
+
+        //lists of gears (and their characteristics) can not contain 'valve' so they're not expanded
+        QueryProfile valve = oxpy.profile("//valve", sedan);
+        assertEquals(arrayListOf(sedan.engine.valve), valve.getResults());
+        QueryProfile characteristic = oxpy.profile("//characteristic", sedan);
+        assertTrue(valve.getSteps().get(0).getVisitedNodes() * 2 < characteristic.getSteps().get(0).getVisitedNodes());
+        assertTrue(valve.getSteps().get(0).getCreatedNodes() * 2 < characteristic.getSteps().get(0).getCreatedNodes());
+
+        sedan.getGears().get(0).characteristics = new ArrayList<Characteristic>() {
+            {
+                add(new Characteristic("11", "model:1"));
+            }
+
+            @Override
+            public Iterator<Characteristic> iterator() {
+                throw new AssertionError("characteristics should not be traversed");
+            }
+        };
+        assertEquals(sedan.engine.valve, oxpy.process("//valve", sedan).get());
+        assertEquals(5, ((List) oxpy.process("//@weight", sedan).get()).size());
+        assertThrows(AssertionError.class, () -> oxpy.process("//characteristic", sedan));
+
+        //once a subclass with more fields is observed, its fields are reachable from declared superclass
+        ValveCharacteristic valveCharacteristic = new ValveCharacteristic();
+        valveCharacteristic.valve = new Gear();
+        assertEquals(valveCharacteristic.valve, oxpy.process("/valve", valveCharacteristic).get());
+        assertTrue(ClassMetadata.of(Gear.class).reachability().mayContainElement("valve"));
+        sedan.getGears().get(0).characteristics = arrayListOf(valveCharacteristic);
+        List<?> valves = (List<?>) oxpy.process("//valve", sedan).get();
+        assertEquals(2, valves.size());
+        assertTrue(valves.contains(valveCharacteristic.valve));
+        assertTrue(valves.contains(sedan.engine.valve));
+    }
+
+    @Test
+    void evaluateAll() {
+        List<CompiledQuery> queries = new ArrayList<>();
+        for (String xPath : arrayListOf("/", "/engine", "/engine/gears", "/engine//characteristics",
+                "/engine/gears/gear[1]/characteristics/characteristic[@details='sn:22']", "//valve/@name",
+                "/gears/gear[1]/characteristics/characteristic[2]", "/gears/gear[@id='111']/characteristics",
+                "/gears/gear[2]//characteristics", "/gears/..", "//*", "//@weight", "/details/d3",
+                "//gear", "//gear[2]", "//characteristic[@details='sn:22']", "//*[@weight > 1]",
+                "//gears//characteristic[last()]", "//gears//*[@name]")) {
+            queries.add(oxpy.compile(xPath));
+        }
+        queries.add(oxpy.compile("/engine"));
+
+        Map<CompiledQuery, Optional<Object>> results = oxpy.evaluateAll(queries, sedan);
+        assertEquals(queries.size() - 1, results.size());
+        assertEquals(new ArrayList<>(results.keySet()), queries.subList(0, queries.size() - 1));
+        for (CompiledQuery query : queries) {
+            assertEquals(query.evaluate(sedan), results.get(query), query.getQuery());
+        }
+        assertTrue(oxpy.evaluateAll(new ArrayList<>(), sedan).isEmpty());
+    }
+
+    @Test
+    void processAll() {
+        List<Sedan> sedans = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Sedan sedan = Sedan.createDefault();
+            sedan.serialNumber = i;
+            sedans.add(sedan);
+        }
+        List<Optional<Object>> results = oxpy.processAll("/@serialNumber", sedans);
+        assertEquals(sedans.size(), results.size());
+        for (int i = 0; i < sedans.size(); i++) {
+            assertEquals(i, results.get(i).get());
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            OXPy oxpy = new OXPy(new OXPyConfig().forkJoinPool(pool));
+            results = oxpy.compile("//characteristic[@details='size:1']").evaluateAll(sedans.spliterator());
+            assertEquals(sedans.size(), results.size());
+            results.forEach(result -> assertEquals(2, ((List) result.get()).size()));
+        } finally {
+            pool.shutdown();
+        }
+
+        assertTrue(oxpy.processAll("/", new ArrayList<>()).isEmpty());
+        assertThrows(NullPointerException.class, () -> oxpy.processAll("/", arrayListOf(sedan, null)));
+    }
+
+    @Test
+    void parallelEvaluation() {
+        List<Sedan> sedans = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Sedan sedan = Sedan.createDefault();
+            sedan.serialNumber = i;
+            sedans.add(sedan);
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            OXPy parallel = new OXPy(new OXPyConfig().forkJoinPool(pool).parallelEvaluation(true).parallelThreshold(2));
+            for (String xPath : arrayListOf("/", "//*", "//@serialNumber", "//sedan/engine", "//gear[@id='111']",
+                    "/sedan[5]/gears/gear[2]//characteristics", "//characteristic[@details='size:1']/@id",
+                    "//gears/..", "//*[@id='22']", "/sedan/gears/gear/characteristics/characteristic[1]")) {
+                assertEquals(oxpy.process(xPath, sedans), parallel.process(xPath, sedans), xPath);
+                assertEquals(oxpy.process(xPath, sedan), parallel.process(xPath, sedan), xPath);
+            }
+            assertEquals(oxpy.process("//@serialNumber", sedans, 3), parallel.process("//@serialNumber", sedans, 3));
+        } finally {
+            pool.shutdown();
+        }
+        assertThrows(IllegalArgumentException.class, () -> new OXPyConfig().parallelThreshold(0));
+    }
+
+    @Test
+    void objectIndex() {
+        List<Sedan> sedans = arrayListOf(sedan, Sedan.createDefault(), Sedan.createDefault());
+        ObjectIndex index = oxpy.index(sedans);
+        ObjectIndex sedanIndex = oxpy.index(sedan);
+        for (String xPath : arrayListOf("/", "//*", "//sedan", "//gear", "//gear[2]", "//@id", "//@details",
+                "//gear[@id='111']//characteristic", "//characteristics/characteristic[2]/@details", "//valve/@name",
+                "/sedan[2]/gears//@id", "//gears/..", "//@id/..", "//*[@id='22']", "//gear//*", "//unknown",
+                "//@unknown", "/sedan/engine//@weight", "//item", "//gear//@id/../characteristics//@id")) {
+            assertEquals(oxpy.process(xPath, sedans), index.process(xPath), xPath);
+            assertEquals(oxpy.process(xPath, sedan), sedanIndex.process(xPath), xPath);
+            assertEquals(oxpy.process(xPath, sedan), oxpy.compile(xPath).evaluate(sedanIndex), xPath);
+        }
+        assertSame(sedans, index.getRoot());
+        assertEquals(oxpy.processStream("//*", sedans).count() + 1, index.getElementCount());
+        assertEquals(3 * sedanIndex.getElementCount() + 1, index.getElementCount());
+        assertEquals(3 * sedanIndex.getAttributeCount(), index.getAttributeCount());
+        assertTrue(index.getMemoryFootprint() > sedanIndex.getMemoryFootprint() * 2);
+
+        assertThrows(EvaluationLimitExceededError.class, () -> new OXPy(new OXPyConfig().maxNodes(10)).index(sedans));
+        assertThrows(NullPointerException.class, () -> oxpy.index(null));
+    }
+
+    @Test
+    void attributeIndex() {
+        List<Sedan> sedans = arrayListOf(sedan, Sedan.createDefault(), Sedan.createDefault());
+        sedans.get(1).serialNumber = 42;
+        ObjectIndex index = oxpy.index(sedans)
+                .indexAttribute("gear", "id")
+                .indexAttribute("characteristic", "details")
+                .indexAttribute("*", "id")
+                .indexAttribute("sedan", "serialNumber");
+        assertTrue(index.hasAttributeIndex("gear", "id"));
+        assertFalse(index.hasAttributeIndex("gear", "details"));
+        for (String xPath : arrayListOf("/sedan/gears/gear[@id='111']", "//gear[@id='111']", "//gear[@id='112']/@id",
+                "/sedan[2]/gears/gear[@id='111']/characteristics", "//characteristic[@details='size:1']",
+                "//characteristics/characteristic[@details='size:1']", "//*[@id='22']", "/*[@serialNumber='42']",
+                "/sedan[@serialNumber='42']/engine", "//gear[@id='unknown']", "//gear[@unknown='111']",
+                "//gear[@id='111']//characteristic[@details='size:1']/@id")) {
+            assertEquals(oxpy.process(xPath, sedans), index.process(xPath), xPath);
+        }
+
+        OXPy autoIndexing = new OXPy(new OXPyConfig().attributeIndexThreshold(2));
+        ObjectIndex autoIndex = autoIndexing.index(sedans);
+        long footprint = autoIndex.getMemoryFootprint();
+        assertEquals(oxpy.process("//gear[@id='111']", sedans), autoIndex.process("//gear[@id='111']"));
+        assertFalse(autoIndex.hasAttributeIndex("gear", "id"));
+        assertEquals(oxpy.process("//gear[@id='112']", sedans), autoIndex.process("//gear[@id='112']"));
+        assertTrue(autoIndex.hasAttributeIndex("gear", "id"));
+        assertEquals(oxpy.process("//gear[@id='111']", sedans), autoIndex.process("//gear[@id='111']"));
+        assertTrue(autoIndex.getMemoryFootprint() > footprint);
+        assertFalse(oxpy.index(sedans).hasAttributeIndex("gear", "id"));
+    }
+
+    @Test
+    void typedPredicates() {
+        List<Measurement> measurements = arrayListOf(new Measurement(), new Measurement());
+        Measurement other = measurements.get(1);
+        other.count = 7;
+        other.total = 7;
+        other.weight = 7.0;
+        other.ratio = 0.5f;
+        other.valid = false;
+        other.grade = 'B';
+        other.level = 7;
+        other.flags = 7;
+        other.label = "m-2";
+        other.boxed = 7;
+        other.unit = TimeUnit.DAYS;
+        for (String xPath : arrayListOf("count", "total", "weight", "ratio", "valid", "grade", "level", "flags",
+                "label", "boxed")) {
+            Object value = oxpy.process("/measurement[1]/@" + xPath, measurements).get();
+            result = oxpy.process("/measurement[@" + xPath + "='" + value + "']", measurements);
+            assertSame(measurements.get(0), result.get(), xPath);
+        }
+        assertEquals(measurements.get(0), oxpy.process("/*[@unit='SECONDS']", measurements).get());
+        assertEquals(measurements.get(1), oxpy.process("/*[@count='7']", measurements).get());
+        assertEquals(measurements.get(1), oxpy.process("/*[@ratio='0.5']", measurements).get());
+        assertFalse(oxpy.process("/*[@count='07']", measurements).isPresent());
+        assertFalse(oxpy.process("/*[@weight='2']", measurements).isPresent());
+        assertFalse(oxpy.process("/*[@ratio='0.250']", measurements).isPresent());
+        assertEquals(measurements.get(0), oxpy.process("/*[@valid='true']", measurements).get());
+        assertFalse(oxpy.process("/*[@valid='TRUE']", measurements).isPresent());
+    }
+
+    @Test
+    void predicateExpressions() {
+        List<Measurement> measurements = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            Measurement measurement = new Measurement();
+            measurement.count = i;
+            measurement.weight = i % 4;
+            measurement.label = "m-" + i;
+            measurement.boxed = i % 2 == 0 ? i : null;
+            measurement.unit = null; //JDK enums cannot be expanded into elements by reflection
+            measurements.add(measurement);
+        }
+        checkCounts(measurements, "/measurement[@count > 7]", 8, 9, 10);
+        checkCounts(measurements, "/measurement[@count >= 3 and @count < 5]", 3, 4);
+        checkCounts(measurements, "/measurement[position() < 3]", 1, 2);
+        checkCounts(measurements, "/measurement[last()]", 10);
+        checkCounts(measurements, "/*[position() = last() or position() = 1]", 1, 10);
+        checkCounts(measurements, "/measurement[not(@count != 3)]", 3);
+        checkCounts(measurements, "/measurement[@count = 3 or @label = 'm-5']", 3, 5);
+        checkCounts(measurements, "/measurement[@label != 'm-1' and @count <= 2]", 2);
+        checkCounts(measurements, "/measurement[@boxed and @count > 5]", 6, 8, 10);
+        checkCounts(measurements, "/measurement[not(@boxed) and @count > 6]", 7, 9);
+        checkCounts(measurements, "/measurement[position() > 1 and (@count < 4 or @count = '10')]", 2, 3, 10);
+        checkCounts(measurements, "/measurement[@weight > @count]");
+        checkCounts(measurements, "/measurement[@weight < @count]", 4, 5, 6, 7, 8, 9, 10);
+        checkCounts(measurements, "/measurement[@weight = @count]"); //compared as strings, '1.0' and '1'
+        checkCounts(measurements, "/measurement[@total = @total and @count = 1]", 1);
+        checkCounts(measurements, "/measurement[@count = 2.0]", 2);
+        checkCounts(measurements, "/measurement[@count = '2.0']");
+        checkCounts(measurements, "/measurement[@boxed != 4 and @boxed < 7]", 2, 6);
+        checkCounts(measurements, "/measurement[@unknown != 1]");
+        checkCounts(measurements, "/measurement[@label > 1]");
+
+        result = oxpy.process("/gears/gear[@weight >= 0 and position() = last()]/@id", sedan);
+        assertEquals(oxpy.process("/gears/gear[3]/@id", sedan), result);
+        result = oxpy.process("//characteristic[@id > 20 and @details != 'sn:22']/@id", sedan);
+        assertEquals(arrayListOf("22", "331", "333"), result.get());
+
+        OXPy parallel = new OXPy(new OXPyConfig().parallelEvaluation(true).parallelThreshold(1));
+        ObjectIndex index = oxpy.index(measurements);
+        for (String xPath : arrayListOf("/measurement[@count > 7]", "//*[@boxed and position() < 5]",
+                "//measurement[last()]/@count", "//*[not(@count = 1) and @count < 4]")) {
+            assertEquals(oxpy.process(xPath, measurements), parallel.process(xPath, measurements), xPath);
+            assertEquals(oxpy.process(xPath, measurements), index.process(xPath), xPath);
+        }
+    }
+
+    void checkCounts(List<Measurement> measurements, String xPath, int... counts) {
+        List<Integer> expected = new ArrayList<>();
+        for (int count : counts) {
+            expected.add(count);
+        }
+        assertEquals(expected, oxpy.processStream(xPath, measurements)
+                .map(measurement -> ((Measurement) measurement).count)
+                .collect(Collectors.toList()), xPath);
+    }
+
+    @Test
+    void cyclicGraph() {
+        Part engine = new Part(1, null);
+        Part valve = new Part(2, engine);
+        engine.parts.add(valve);
+        valve.parts.add(new Part(3, valve));
+        valve.parts.add(engine);
+
+        result = oxpy.process("//@id", engine);
+        assertEquals(arrayListOf(1, 2, 1, 3, 2, 1), result.get());
+        result = oxpy.process("/parts/part[1]/parent/@id", engine);
+        assertEquals(1, result.get());
+        result = oxpy.process("/parts/part[1]/parent/parts", engine);
+        assertFalse(result.isPresent());
+        assertEquals(3L, oxpy.processStream("//part", engine).count());
+
+        Part chain = new Part(0, null);
+        Part last = chain;
+        for (int i = 1; i < 10_000; i++) {
+            Part next = new Part(i, last);
+            last.parts.add(next);
+            last = next;
+        }
+        assertEquals(9_999, oxpy.process("//part[@id='9999']/@id", chain).get());
+        OXPy parallel = new OXPy(new OXPyConfig().parallelEvaluation(true).parallelThreshold(8));
+        assertEquals(9_999, parallel.process("//part[@id='9999']/@id", chain).get());
+    }
+
+    @Test
+    void evaluationLimits() {
+        Part chain = new Part(0, null);
+        Part last = chain;
+        for (int i = 1; i < 100; i++) {
+            Part next = new Part(i, last);
+            last.parts.add(next);
+            last = next;
+        }
+
+        OXPy limited = new OXPy(new OXPyConfig().maxDepth(20));
+        assertEquals(1, limited.process("/parts/part/@id", chain).get());
+        assertThrows(EvaluationLimitExceededError.class, () -> limited.process("//part[@id='99']", chain));
+        assertThrows(EvaluationLimitExceededError.class, () -> limited.processStream("//@id", chain).count());
+        assertEquals(5L, limited.processStream("//@id", chain).limit(5).count());
+        OXPy parallel = new OXPy(new OXPyConfig().maxDepth(20).parallelEvaluation(true).parallelThreshold(1));
+        assertThrows(EvaluationLimitExceededError.class, () -> parallel.process("//part[@id='99']", chain));
+
+        OXPy maxNodes = new OXPy(new OXPyConfig().maxNodes(50));
+        assertEquals(1, maxNodes.process("/parts/part/@id", chain).get());
+        assertThrows(EvaluationLimitExceededError.class, () -> maxNodes.process("//part[@id='99']", chain));
+        assertThrows(EvaluationLimitExceededError.class, () -> maxNodes.evaluateAll(
+                arrayListOf(maxNodes.compile("/"), maxNodes.compile("//@id")), chain));
+
+        List<Integer> huge = new AbstractList<Integer>() {
+            @Override
+            public Integer get(int index) {
+                throw new AssertionError("items are not expected to be read");
+            }
+
+            @Override
+            public int size() {
+                return 10_000_000;
+            }
+        };
+        assertThrows(EvaluationLimitExceededError.class, () -> maxNodes.process("/item", huge));
+
+        OXPy timeLimit = new OXPy(new OXPyConfig().timeLimit(1, TimeUnit.NANOSECONDS));
+        assertThrows(EvaluationLimitExceededError.class, () -> timeLimit.process("//part[@id='99']", chain));
+        OXPy noTimeLimit = new OXPy(new OXPyConfig().timeLimit(1, TimeUnit.MINUTES));
+        assertEquals(99, noTimeLimit.process("//part[@id='99']/@id", chain).get());
+
+        assertThrows(IllegalArgumentException.class, () -> new OXPyConfig().maxDepth(-1));
+        assertThrows(IllegalArgumentException.class, () -> new OXPyConfig().maxNodes(0));
+        assertThrows(IllegalArgumentException.class, () -> new OXPyConfig().timeLimit(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void metrics() {
+        List<OXPyMetrics.Evaluation> evaluations = new ArrayList<>();
+        CountingMetrics metrics = new CountingMetrics() {
+            @Override
+            public void evaluated(OXPyMetrics.Evaluation evaluation) {
+                super.evaluated(evaluation);
+                evaluations.add(evaluation);
+            }
+        };
+        OXPy oxpy = new OXPy(new OXPyConfig().metrics(metrics));
+
+        assertEquals("gear_2", oxpy.process("/gears/gear[@weight > 1.3]/@name", sedan).get());
+        OXPyMetrics.Evaluation evaluation = evaluations.get(0);
+        assertEquals("/gears/gear[@weight > 1.3]/@name", evaluation.getQuery());
+        assertEquals(1, evaluation.getResults());
+        assertEquals(3, evaluation.getPredicateEvaluations());
+        assertTrue(evaluation.getNodes() > 3);
+        assertTrue(evaluation.getFieldReads() > 3);
+        assertTrue(evaluation.getTraversalNanos() > 0);
+        assertEquals(1, metrics.getParsedQueries());
+        assertEquals(1, metrics.getCacheMisses());
+
+        assertEquals(3, oxpy.count("/gears/gear", sedan));
+        assertEquals(3, evaluations.get(1).getResults());
+        assertEquals(0, evaluations.get(1).getPredicateEvaluations());
+        oxpy.count("/gears/gear", sedan);
+        assertEquals(1, metrics.getCacheHits());
+        assertEquals(2, metrics.getParsedQueries());
+
+        oxpy.evaluateAll(arrayListOf(oxpy.compile("/engine"), oxpy.compile("/gears/gear")), sedan);
+        assertEquals("/engine | /gears/gear", evaluations.get(3).getQuery());
+        assertEquals(4, evaluations.get(3).getResults());
+        oxpy.processStream("/gears/gear", sedan).count();
+        assertEquals(4, metrics.getEvaluations());
+        assertEquals(1 + 3 + 3 + 4, metrics.getResults());
+        assertEquals(evaluations.stream().mapToLong(OXPyMetrics.Evaluation::getNodes).sum(), metrics.getNodes());
+
+        assertSame(OXPyMetrics.NONE, new OXPyConfig().getMetrics());
+        assertThrows(NullPointerException.class, () -> new OXPyConfig().metrics(null));
+    }
+
+    @Test
+    void explain() {
+        assertEquals("/gears/gear[@weight > 1.3]//characteristic[@id='22']/@details\n"
+                        + "1. /gears: CHILD SIMPLE_NODE name=gears\n"
+                        + "2. /gear[@weight > 1.3]: CHILD NODE_WITH_PREDICATE name=gear predicate=@weight > 1.3\n"
+                        + "3. //characteristic[@id='22']: DESCENDANT NODE_WITH_ATTRIBUTE name=characteristic"
+                        + " predicate=@id = '22'\n"
+                        + "4. /@details: CHILD NODE_ATTRIBUTE name=details",
+                oxpy.explain("/gears/gear[@weight > 1.3]//characteristic[@id='22']/@details"));
+        assertEquals("/*[2]/*[position() < last()]\n"
+                        + "1. /*[2]: CHILD ANY_NODE_WITH_INDEX name=* index=2\n"
+                        + "2. /*[position() < last()]: CHILD ANY_NODE_WITH_PREDICATE name=*"
+                        + " predicate=position() < last() (all candidates are collected for last())",
+                oxpy.compile("/*[2]/*[position() < last()]").explain());
+        assertThrows(InvalidXPathExpressionError.class, () -> oxpy.explain("///"));
+    }
+
+    @Test
+    void profile() {
+        QueryProfile profile = oxpy.profile("/gears/gear[@weight < 1.3]/characteristics/characteristic/@id", sedan);
+        assertEquals(arrayListOf("11", "22", "13", "14"), profile.getResults());
+        assertEquals(oxpy.process(profile.getQuery(), sedan).get(), profile.getResults());
+        assertEquals(5, profile.getSteps().size());
+
+        QueryProfile.Step gears = profile.getSteps().get(0);
+        assertEquals(1, gears.getInput());
+        assertEquals(1, gears.getMatches());
+        assertEquals(0, gears.getPredicateEvaluations());
+        assertTrue(gears.getVisitedNodes() > 1);
+        assertTrue(gears.getFieldReads() > 1);
+
+        QueryProfile.Step gear = profile.getSteps().get(1);
+        assertTrue(gear.getDescription().startsWith("/gear[@weight < 1.3]: CHILD NODE_WITH_PREDICATE"));
+        assertEquals(1, gear.getInput());
+        assertEquals(3, gear.getVisitedNodes());
+        assertEquals(3, gear.getCreatedNodes());
+        assertEquals(3, gear.getPredicateEvaluations());
+        assertEquals(2, gear.getMatches());
+
+        assertEquals(2, profile.getSteps().get(2).getInput());
+        assertEquals(4, profile.getSteps().get(3).getMatches()); //null characteristic is skipped
+        assertEquals(4, profile.getSteps().get(4).getMatches());
+        profile.getSteps().forEach(step -> assertTrue(step.getAllocatedBytes() >= 0));
+        assertTrue(profile.toString().contains("/gear[@weight < 1.3]"));
+
+        //candidates are counted even if their nodes were created by previous steps
+        CountingMetrics metrics = new CountingMetrics();
+        profile = new OXPy(new OXPyConfig().metrics(metrics)).profile("/gears/gear[last()]/../gear", sedan);
+        QueryProfile.Step revisited = profile.getSteps().get(3);
+        assertEquals(1, revisited.getInput());
+        assertEquals(3, revisited.getVisitedNodes());
+        assertEquals(0, revisited.getCreatedNodes());
+        assertEquals(3, revisited.getMatches());
+        //profiled evaluations are not reported
+        assertEquals(0, metrics.getEvaluations());
+    }
+
     @Test
     void nullObject() {
         assertThrows(NullPointerException.class, () -> oxpy.process("/", null));
@@ -335,4 +1135,67 @@ class OXPyTest {
         }
         throw new AssertionError(xPath + " was treated like valid XPath expression");
     }
-}
\ No newline at end of file
+
+    static class ValveCharacteristic extends Characteristic {
+        Gear valve;
+
+        ValveCharacteristic() {
+            super("valve", "valve");
+        }
+    }
+
+    static class Measurement {
+        int count = 3;
+        long total = 10_000_000_000L;
+        double weight = 2.0;
+        float ratio = 0.25f;
+        boolean valid = true;
+        char grade = 'A';
+        short level = 2;
+        byte flags = -1;
+        String label = "m-1";
+        Integer boxed = 5;
+        TimeUnit unit = TimeUnit.SECONDS;
+    }
+
+    static class Telemetry {
+        int[] readings = {3, 1, 4, 1, 5};
+        double[] temperatures = {0.5, 1.25};
+        boolean[] flags = {false, true};
+        char[] code = {'a', 'b'};
+        String[] tags = {"a", "b", "c"};
+        int[][] matrix = {{0}, {1, 2, 3}};
+        Measurement[] measurements = {null, new Measurement(), new Measurement()};
+
+        Telemetry() {
+            measurements[1].count = 1;
+            measurements[2].count = 2;
+            measurements[1].unit = null;
+            measurements[2].unit = null;
+        }
+    }
+
+    static class Key {
+        final int id;
+
+        Key(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public String toString() {
+            return "key-" + id;
+        }
+    }
+
+    static class Part {
+        int id;
+        Part parent;
+        List<Part> parts = new ArrayList<>();
+
+        Part(int id, Part parent) {
+            this.id = id;
+            this.parent = parent;
+        }
+    }
+}
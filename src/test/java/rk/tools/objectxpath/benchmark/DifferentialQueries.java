@@ -0,0 +1,120 @@
+package rk.tools.objectxpath.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates pairs of equivalent OXPy and JXPath queries for graphs generated by {@link GraphGenerator}
+ * (with depth {@code 1}), so both libraries can be checked against each other and compared.
+ * <p>
+ * Query syntax differs as JXPath represents every collection item by the name of the property
+ * holding the collection and every bean property (primitive or not) by an element:
+ * {@code /fleets/fleet[1]/sedans/sedan[2]/@serialNumber} is {@code /fleets[1]/sedans[2]/serialNumber}.
+ * <p>
+ * Supported subset: child and descendant steps, positions, attribute and map key steps,
+ * equality, numeric, boolean and position predicates.
+ */
+public class DifferentialQueries {
+
+    /**
+     * Query kind to OXPy and JXPath query templates,
+     * {@code %1$d}-{@code %3$d} are positions, {@code %4$s} is an existing gear id.
+     */
+    private static final Map<String, String[]> TEMPLATES = new LinkedHashMap<>();
+
+    static {
+        TEMPLATES.put("childPath", new String[]{
+                "/fleets/fleet[%1$d]/sedans/sedan[%2$d]/gears/gear[%3$d]/@name",
+                "/fleets[%1$d]/sedans[%2$d]/gears[%3$d]/name"});
+        TEMPLATES.put("childCollection", new String[]{
+                "/fleets/fleet[%1$d]/sedans/sedan/gears/gear/characteristics/characteristic/@details",
+                "/fleets[%1$d]/sedans/gears/characteristics/details"});
+        TEMPLATES.put("descendant", new String[]{
+                "//characteristic",
+                "//characteristics"});
+        TEMPLATES.put("descendantAttribute", new String[]{
+                "//engine/@volume",
+                "//engine/volume"});
+        TEMPLATES.put("mapKey", new String[]{
+                "/fleets/fleet[%1$d]/sedans/sedan[%2$d]/details/d%3$d",
+                "/fleets[%1$d]/sedans[%2$d]/details/d%3$d"});
+        TEMPLATES.put("equalityPredicate", new String[]{
+                "//gear[@id='%4$s']/@name",
+                "//gears[id='%4$s']/name"});
+        TEMPLATES.put("numericPredicate", new String[]{
+                "/fleets/fleet[%1$d]/sedans/sedan/gears/gear[@weight > %3$d]/@id",
+                "/fleets[%1$d]/sedans/gears[weight > %3$d]/id"});
+        TEMPLATES.put("positionPredicate", new String[]{
+                "/fleets/fleet[%1$d]/sedans/sedan[position() < %2$d]/@serialNumber",
+                "/fleets[%1$d]/sedans[position() < %2$d]/serialNumber"});
+        TEMPLATES.put("lastPredicate", new String[]{
+                "/fleets/fleet[last()]/sedans/sedan[%2$d]/gears/gear[last()]/@id",
+                "/fleets[last()]/sedans[%2$d]/gears[last()]/id"});
+        TEMPLATES.put("booleanPredicate", new String[]{
+                "//characteristic[@details='size:%3$d' and not(@id < %1$d0)]/@id",
+                "//characteristics[details='size:%3$d' and not(id < %1$d0)]/id"});
+    }
+
+    /**
+     * Pair of equivalent queries.
+     */
+    public static class QueryPair {
+        public final String kind;
+        public final String oxpy;
+        public final String jxpath;
+
+        QueryPair(String kind, String oxpy, String jxpath) {
+            this.kind = kind;
+            this.oxpy = oxpy;
+            this.jxpath = jxpath;
+        }
+
+        /**
+         * Results of descendant steps are in different order as JXPath orders bean properties by name.
+         */
+        public boolean isOrdered() {
+            return !oxpy.contains("//");
+        }
+
+        @Override
+        public String toString() {
+            return oxpy + " <-> " + jxpath;
+        }
+    }
+
+    public static List<String> kinds() {
+        return new ArrayList<>(TEMPLATES.keySet());
+    }
+
+    /**
+     * Generates a query of provided kind with random positions.
+     *
+     * @param width  width of the graph (positions are chosen up to it)
+     * @param gearId id of one of gears of the graph
+     */
+    public static QueryPair generate(String kind, int width, String gearId, Random random) {
+        String[] templates = TEMPLATES.get(kind);
+        if (templates == null) {
+            throw new IllegalArgumentException("Unknown query kind " + kind);
+        }
+        Object[] args = {1 + random.nextInt(width), 1 + random.nextInt(width), 1 + random.nextInt(width), gearId};
+        return new QueryPair(kind, String.format(templates[0], args), String.format(templates[1], args));
+    }
+
+    /**
+     * Generates {@code count} queries of every kind.
+     */
+    public static List<QueryPair> generateAll(int count, int width, List<String> gearIds, Random random) {
+        List<QueryPair> queries = new ArrayList<>();
+        for (String kind : TEMPLATES.keySet()) {
+            for (int i = 0; i < count; i++) {
+                queries.add(generate(kind, width, gearIds.get(random.nextInt(gearIds.size())), random));
+            }
+        }
+        return Collections.unmodifiableList(queries);
+    }
+}
@@ -0,0 +1,138 @@
+package rk.tools.objectxpath.benchmark;
+
+import rk.tools.objectxpath.object.Characteristic;
+import rk.tools.objectxpath.object.Engine;
+import rk.tools.objectxpath.object.Gear;
+import rk.tools.objectxpath.object.Sedan;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Generates object graphs of configurable size from the test model.
+ * <p>
+ * A graph is a tree of fleets {@code depth} levels deep, every fleet has {@code width} nested fleets,
+ * fleets of the last level have {@code width} sedans. Every sedan has {@code width} gears
+ * with {@link #CHARACTERISTICS} characteristics each, an engine and {@code width} details (a map).
+ */
+public class GraphGenerator {
+    public static final int CHARACTERISTICS = 4;
+
+    private final int width;
+    private final int depth;
+    private int sequence;
+
+    public GraphGenerator(int width, int depth) {
+        if (width < 1 || depth < 0) {
+            throw new IllegalArgumentException("width must be positive and depth cannot be negative");
+        }
+        this.width = width;
+        this.depth = depth;
+    }
+
+    public Fleet generate() {
+        return fleet(depth);
+    }
+
+    /**
+     * @return child path from the root to sedans of the first fleet of every level
+     * (e.g. {@code /fleets/fleet[1]/sedans} for depth {@code 1})
+     */
+    public String firstSedansPath() {
+        StringBuilder path = new StringBuilder();
+        for (int level = 0; level < depth; level++) {
+            path.append("/fleets/fleet[1]");
+        }
+        return path.append("/sedans").toString();
+    }
+
+    /**
+     * @return child path from the root to sedans of all fleets (e.g. {@code /fleets/fleet/sedans})
+     */
+    public String allSedansPath() {
+        StringBuilder path = new StringBuilder();
+        for (int level = 0; level < depth; level++) {
+            path.append("/fleets/fleet");
+        }
+        return path.append("/sedans").toString();
+    }
+
+    /**
+     * @return number of sedans in a generated graph
+     */
+    public int sedanCount() {
+        int count = width;
+        for (int level = 0; level < depth; level++) {
+            count *= width;
+        }
+        return count;
+    }
+
+    private Fleet fleet(int level) {
+        Fleet fleet = new Fleet();
+        fleet.name = "fleet-" + sequence++;
+        if (level == 0) {
+            fleet.sedans = new ArrayList<>(width);
+            for (int i = 0; i < width; i++) {
+                fleet.sedans.add(sedan());
+            }
+        } else {
+            fleet.fleets = new ArrayList<>(width);
+            for (int i = 0; i < width; i++) {
+                fleet.fleets.add(fleet(level - 1));
+            }
+        }
+        return fleet;
+    }
+
+    private Sedan sedan() {
+        Sedan sedan = new Sedan();
+        sedan.serialNumber = sequence++;
+        sedan.trunkSize = sedan.serialNumber % 7;
+        sedan.details = new HashMap<>();
+        for (int i = 0; i < width; i++) {
+            sedan.details.put("d" + i, "details-" + sedan.serialNumber + "-" + i);
+        }
+        List<Gear> gears = new ArrayList<>(width);
+        for (int i = 0; i < width; i++) {
+            gears.add(gear());
+        }
+        sedan.setGears(gears);
+        sedan.engine = new Engine();
+        sedan.engine.setVolume(1 + sedan.serialNumber % 3);
+        sedan.engine.valve = gear();
+        return sedan;
+    }
+
+    private Gear gear() {
+        Gear gear = new Gear();
+        int id = sequence++;
+        gear.setId(String.valueOf(id));
+        gear.name = "gear-" + id;
+        gear.weight = id % 10;
+        gear.characteristics = new ArrayList<>(CHARACTERISTICS);
+        for (int i = 0; i < CHARACTERISTICS; i++) {
+            gear.characteristics.add(new Characteristic(String.valueOf(sequence++), "size:" + i));
+        }
+        return gear;
+    }
+
+    public static class Fleet {
+        public String name;
+        public List<Fleet> fleets;
+        public List<Sedan> sedans;
+
+        public String getName() {
+            return name;
+        }
+
+        public List<Fleet> getFleets() {
+            return fleets;
+        }
+
+        public List<Sedan> getSedans() {
+            return sedans;
+        }
+    }
+}
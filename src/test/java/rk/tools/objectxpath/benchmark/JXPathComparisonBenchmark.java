@@ -0,0 +1,81 @@
+package rk.tools.objectxpath.benchmark;
+
+import org.apache.commons.jxpath.CompiledExpression;
+import org.apache.commons.jxpath.JXPathContext;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import rk.tools.objectxpath.CompiledQuery;
+import rk.tools.objectxpath.OXPy;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares OXPy and commons-jxpath evaluating the same {@link DifferentialQueries generated queries}
+ * on the same graph (result equivalence is checked by {@code JXPathDifferentialTest}).
+ * Both libraries evaluate precompiled queries and collect matching values into a list,
+ * run with GC profiler to compare allocations per evaluation.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JXPathComparisonBenchmark {
+
+    @Param({"childPath", "childCollection", "descendant", "descendantAttribute", "mapKey",
+            "equalityPredicate", "numericPredicate", "positionPredicate", "lastPredicate", "booleanPredicate"})
+    String kind;
+
+    @Param({"10"})
+    int width;
+
+    GraphGenerator.Fleet fleet;
+    CompiledQuery oxpyQuery;
+    JXPathContext jxpathContext;
+    CompiledExpression jxpathQuery;
+
+    @Setup
+    public void setUp() {
+        fleet = new GraphGenerator(width, 1).generate();
+        OXPy oxpy = new OXPy();
+        List<String> gearIds = oxpy.evaluateInto("//gear/@id", fleet, String.class, new ArrayList<>());
+        Random random = new Random(kind.hashCode());
+        DifferentialQueries.QueryPair query = DifferentialQueries.generate(kind, width,
+                gearIds.get(random.nextInt(gearIds.size())), random);
+        oxpyQuery = oxpy.compile(query.oxpy);
+        jxpathContext = JXPathContext.newContext(fleet);
+        jxpathQuery = JXPathContext.compile(query.jxpath);
+        if (oxpy().size() != jxpath().size()) {
+            throw new IllegalStateException("Different number of matches of " + query);
+        }
+    }
+
+    @Benchmark
+    public List<Object> oxpy() {
+        return oxpyQuery.evaluateInto(fleet, Object.class, new ArrayList<>());
+    }
+
+    @Benchmark
+    public List<Object> jxpath() {
+        List<Object> result = new ArrayList<>();
+        @SuppressWarnings("unchecked") //JXPath returns a raw iterator
+        Iterator<Object> matches = jxpathQuery.iterate(jxpathContext);
+        matches.forEachRemaining(result::add);
+        return result;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JXPathComparisonBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,72 @@
+package rk.tools.objectxpath.benchmark;
+
+import rk.tools.objectxpath.xpath.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Copy of regex based parser replaced by {@link XPathParser}.
+ * Kept only as a baseline for {@link XPathParserBenchmark}.
+ */
+class LegacyRegexXPathParser {
+
+    private enum Type {
+        ROOT_NODE("(^/$)"),
+        PARENT_NODE("/(\\.\\.)"),
+        ANY_NODE_WITH_ATTRIBUTE("/(\\*)\\[@(.*)='(.*)']"),
+        ANY_NODE_WITH_INDEX("/(\\*)\\[([0-9]+)]"),
+        NODE_WITH_ATTRIBUTE("/([a-zA-Z0-9_-]+)\\[@(.*)='(.*)']"),
+        NODE_WITH_INDEX("/([a-zA-Z0-9_-]+)\\[([0-9]+)]"),
+        ANY_NODE("/(\\*)"),
+        SIMPLE_NODE("/([a-zA-Z0-9_-]+)"),
+        NODE_ATTRIBUTE("/@([a-zA-Z0-9_-]+)");
+
+        final Pattern pattern;
+
+        Type(String pattern) {
+            this.pattern = Pattern.compile(pattern);
+        }
+    }
+
+    static List<XPathNode> parse(String xPath) {
+        List<XPathNode> nodes = new ArrayList<>();
+        XPathNode node;
+        while ((node = findNextXPathNode(xPath)) != null) {
+            nodes.add(node);
+            xPath = xPath.substring(node.endIndex);
+        }
+        return nodes;
+    }
+
+    private static XPathNode findNextXPathNode(String xPath) {
+        for (Type type : Type.values()) {
+            Matcher matcher = type.pattern.matcher(xPath);
+            if (matcher.find() && (matcher.start() == 0 || matcher.start() == 1)) {
+                return create(type, matcher);
+            }
+        }
+        return null;
+    }
+
+    private static XPathNode create(Type type, Matcher matcher) {
+        XPathNodeType nodeType = XPathNodeType.valueOf(type.name());
+        NodeRelationship relationship = matcher.start() == 0 ? NodeRelationship.CHILD : NodeRelationship.DESCENDANT;
+        switch (type) {
+            case ANY_NODE_WITH_INDEX:
+            case NODE_WITH_INDEX:
+                return new NodeWithIndex(nodeType, relationship, matcher.group(1), matcher.start(), matcher.end(),
+                        Integer.parseInt(matcher.group(2)));
+            case ANY_NODE_WITH_ATTRIBUTE:
+            case NODE_WITH_ATTRIBUTE:
+                return new NodeWithAttribute(nodeType, relationship, matcher.group(1), matcher.start(), matcher.end(),
+                        matcher.group(2), matcher.group(3));
+            case NODE_ATTRIBUTE:
+                return new AttributeNode(matcher.group(1), relationship, matcher.start(), matcher.end());
+            default:
+                return new XPathNode(nodeType, relationship, matcher.group(1), matcher.start(), matcher.end());
+        }
+    }
+}
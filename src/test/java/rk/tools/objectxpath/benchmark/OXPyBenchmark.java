@@ -0,0 +1,156 @@
+package rk.tools.objectxpath.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import rk.tools.objectxpath.CompiledQuery;
+import rk.tools.objectxpath.OXPy;
+import rk.tools.objectxpath.OXPyConfig;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures query compilation and evaluation of every kind of XPath step
+ * on graphs generated by {@link GraphGenerator}.
+ * <p>
+ * Reports throughput and latency percentiles (sample time mode),
+ * run with GC profiler to see allocations per operation:
+ * {@code mvn test -Pbenchmark -Dbenchmark=OXPyBenchmark} or {@link #main(String[])}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OXPyBenchmark {
+
+    @Param({"4", "10"})
+    int width;
+
+    @Param({"1", "2"})
+    int depth;
+
+    GraphGenerator.Fleet fleet;
+    OXPy oxpy;
+    /**
+     * Compiles queries without caching them, with and without JDK validation.
+     */
+    OXPy validatingCompiler;
+    OXPy compiler;
+
+    String complexQuery;
+    CompiledQuery childSteps;
+    CompiledQuery descendantStep;
+    CompiledQuery indexStep;
+    CompiledQuery attributeStep;
+    CompiledQuery attributePredicate;
+    CompiledQuery mapLookup;
+    CompiledQuery mapTraversal;
+    CompiledQuery collectionTraversal;
+    CompiledQuery wholeTree;
+
+    @Setup
+    public void setUp() {
+        GraphGenerator generator = new GraphGenerator(width, depth);
+        fleet = generator.generate();
+        oxpy = new OXPy();
+        validatingCompiler = new OXPy(new OXPyConfig().queryCacheSize(0));
+        compiler = new OXPy(new OXPyConfig().queryCacheSize(0).validateQueries(false));
+
+        String firstSedan = generator.firstSedansPath() + "/sedan[1]";
+        String lastGear = oxpy.process(firstSedan + "/gears/gear[last()]/@id", fleet)
+                .orElseThrow(IllegalStateException::new).toString();
+        complexQuery = generator.allSedansPath() + "/sedan[@trunkSize > 2]/gears/gear[@weight < 5 or position() = 1]"
+                + "/characteristics/characteristic[@details='size:1']/@id";
+        childSteps = oxpy.compile(generator.allSedansPath() + "/sedan/gears/gear/characteristics/characteristic");
+        descendantStep = oxpy.compile("//characteristic");
+        indexStep = oxpy.compile(firstSedan + "/gears/gear[" + width + "]/characteristics/characteristic[2]");
+        attributeStep = oxpy.compile(generator.allSedansPath() + "/sedan/engine/@volume");
+        attributePredicate = oxpy.compile("//gear[@id='" + lastGear + "']");
+        mapLookup = oxpy.compile(firstSedan + "/details/d" + (width - 1));
+        mapTraversal = oxpy.compile("//details/*");
+        collectionTraversal = oxpy.compile(generator.allSedansPath() + "/*/gears/*");
+        wholeTree = oxpy.compile("//*");
+
+        check(childSteps.count(fleet) == (long) generator.sedanCount() * width * GraphGenerator.CHARACTERISTICS,
+                childSteps);
+        check(attributePredicate.evaluate(fleet).isPresent(), attributePredicate);
+        check(mapLookup.evaluate(fleet).isPresent(), mapLookup);
+        check(indexStep.evaluate(fleet).isPresent(), indexStep);
+    }
+
+    private static void check(boolean condition, CompiledQuery query) {
+        if (!condition) {
+            throw new IllegalStateException("Unexpected result of " + query);
+        }
+    }
+
+    @Benchmark
+    public CompiledQuery validateAndParse() {
+        return validatingCompiler.compile(complexQuery);
+    }
+
+    @Benchmark
+    public CompiledQuery parse() {
+        return compiler.compile(complexQuery);
+    }
+
+    /**
+     * Converts the whole object graph into a tree.
+     */
+    @Benchmark
+    public long buildTree() {
+        return wholeTree.count(fleet);
+    }
+
+    @Benchmark
+    public Optional<Object> childSteps() {
+        return childSteps.evaluate(fleet);
+    }
+
+    @Benchmark
+    public Optional<Object> descendantStep() {
+        return descendantStep.evaluate(fleet);
+    }
+
+    @Benchmark
+    public Optional<Object> indexStep() {
+        return indexStep.evaluate(fleet);
+    }
+
+    @Benchmark
+    public Optional<Object> attributeStep() {
+        return attributeStep.evaluate(fleet);
+    }
+
+    @Benchmark
+    public Optional<Object> attributePredicate() {
+        return attributePredicate.evaluate(fleet);
+    }
+
+    @Benchmark
+    public Optional<Object> mapLookup() {
+        return mapLookup.evaluate(fleet);
+    }
+
+    @Benchmark
+    public Optional<Object> mapTraversal() {
+        return mapTraversal.evaluate(fleet);
+    }
+
+    @Benchmark
+    public Optional<Object> collectionTraversal() {
+        return collectionTraversal.evaluate(fleet);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(OXPyBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
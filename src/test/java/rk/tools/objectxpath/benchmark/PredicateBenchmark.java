@@ -0,0 +1,89 @@
+package rk.tools.objectxpath.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import rk.tools.objectxpath.CompiledQuery;
+import rk.tools.objectxpath.OXPy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures attribute predicates on fields of different types,
+ * run with GC profiler to see allocations per evaluation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PredicateBenchmark {
+
+    @Param({"count", "weight", "valid", "label"})
+    String attribute;
+
+    @Param({"10000"})
+    int size;
+
+    List<Item> items;
+    CompiledQuery query;
+
+    @Setup
+    public void setUp() {
+        items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(new Item(i, i == size - 1));
+        }
+        Item last = items.get(size - 1);
+        String value;
+        switch (attribute) {
+            case "count":
+                value = String.valueOf(last.count);
+                break;
+            case "weight":
+                value = String.valueOf(last.weight);
+                break;
+            case "valid":
+                value = String.valueOf(last.valid);
+                break;
+            default:
+                value = last.label;
+        }
+        query = new OXPy().compile("/item[@" + attribute + "='" + value + "']");
+        if (query.evaluate(items).get() != last) {
+            throw new IllegalStateException("Unexpected result of " + query);
+        }
+    }
+
+    @Benchmark
+    public Optional<Object> predicate() {
+        return query.evaluate(items);
+    }
+
+    public static class Item {
+        int count;
+        double weight;
+        boolean valid;
+        String label;
+
+        Item(int i, boolean valid) {
+            this.count = i;
+            this.weight = i / 4.0;
+            this.valid = valid;
+            this.label = "item-" + i;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PredicateBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
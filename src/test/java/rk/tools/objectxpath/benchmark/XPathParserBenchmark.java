@@ -0,0 +1,68 @@
+package rk.tools.objectxpath.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import rk.tools.objectxpath.xpath.XPathNode;
+import rk.tools.objectxpath.xpath.XPathParser;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link XPathParser} with the regex based parser it replaced
+ * on generated queries of different length.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XPathParserBenchmark {
+
+    private static final String[] STEPS = {
+            "/gears", "/gear[2]", "//characteristics", "/*", "/..", "/characteristic[11]", "/*[3]"
+    };
+
+    @Param({"4", "16", "64"})
+    int steps;
+
+    String xPath;
+
+    @Setup
+    public void setUp() {
+        xPath = generateXPath(steps);
+        if (XPathParser.parse(xPath).size() != LegacyRegexXPathParser.parse(xPath).size()) {
+            throw new IllegalStateException("Parsers disagree on " + xPath);
+        }
+    }
+
+    @Benchmark
+    public List<XPathNode> parser() {
+        return XPathParser.parse(xPath);
+    }
+
+    @Benchmark
+    public List<XPathNode> regex() {
+        return LegacyRegexXPathParser.parse(xPath);
+    }
+
+    /**
+     * Generates a query of {@code steps} steps ending with an attribute predicate.
+     */
+    static String generateXPath(int steps) {
+        StringBuilder xPath = new StringBuilder();
+        for (int i = 0; i < steps - 1; i++) {
+            xPath.append(STEPS[i % STEPS.length]);
+        }
+        return xPath.append("/characteristic[@details='size:1']").toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(XPathParserBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
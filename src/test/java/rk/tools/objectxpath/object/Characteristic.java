@@ -8,4 +8,12 @@ public class Characteristic {
         this.id = id;
         this.details = details;
     }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getDetails() {
+        return details;
+    }
 }
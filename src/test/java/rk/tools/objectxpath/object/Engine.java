@@ -15,4 +15,16 @@ public class Engine {
     public void setVolume(double volume) {
         this.volume = volume;
     }
+
+    public List<Characteristic> getCharacteristics() {
+        return characteristics;
+    }
+
+    public List<Gear> getGears() {
+        return gears;
+    }
+
+    public Gear getValve() {
+        return valve;
+    }
 }
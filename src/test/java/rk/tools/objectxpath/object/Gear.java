@@ -15,4 +15,16 @@ public class Gear {
     public void setId(String id) {
         this.id = id;
     }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getWeight() {
+        return weight;
+    }
+
+    public List<Characteristic> getCharacteristics() {
+        return characteristics;
+    }
 }
@@ -13,6 +13,18 @@ public class Sedan extends Vehicle {
     public Map<String, String> details;
     public Map<Integer, String> materials;
 
+    public double getTrunkSize() {
+        return trunkSize;
+    }
+
+    public Map<String, String> getDetails() {
+        return details;
+    }
+
+    public Map<Integer, String> getMaterials() {
+        return materials;
+    }
+
     public static Sedan createDefault() {
         Sedan sedan = new Sedan();
 
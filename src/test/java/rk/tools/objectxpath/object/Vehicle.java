@@ -15,4 +15,16 @@ public class Vehicle {
     public void setGears(List<Gear> gears) {
         this.gears = gears;
     }
+
+    public int getSerialNumber() {
+        return serialNumber;
+    }
+
+    public List<Integer> getCountryCodes() {
+        return countryCodes;
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
 }
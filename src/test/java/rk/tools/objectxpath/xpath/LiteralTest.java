@@ -0,0 +1,47 @@
+package rk.tools.objectxpath.xpath;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LiteralTest {
+
+    final List<String> texts = Arrays.asList("0", "1", "-1", "01", "+1", "-0", "1.0", "-0.0", "0.0", "1.5",
+            "0.1", "1e3", "1000.0", "1.0E10", "NaN", "Infinity", "-Infinity", "true", "false", "TRUE", "a", "",
+            "9223372036854775807", "9223372036854775808", "2147483648", "127", "128", "3.4028235E38", "SECONDS");
+
+    final List<Object> values = Arrays.asList(0, 1, -1, 0L, 1L, (short) 1, (byte) 127, 128, 2147483647L + 1,
+            Long.MAX_VALUE, 0.0, -0.0, 1.0, 1.5, 0.1, 1000.0, 1.0E10, Double.NaN, Double.POSITIVE_INFINITY,
+            Double.NEGATIVE_INFINITY, 0.1f, 1.0f, Float.MAX_VALUE, Float.NaN, true, false, 'a', '1', "a", "",
+            "1", "01", "true", TimeUnit.SECONDS, new BigDecimal("1.0"), new BigDecimal("1"));
+
+    @Test
+    void matchesLikeStrings() {
+        for (String text : texts) {
+            Literal literal = Literal.of(text);
+            for (Object value : values) {
+                assertEquals(text.equals(String.valueOf(value)), literal.matches(value), text + " vs " + value);
+            }
+            assertFalse(literal.matches((Object) null));
+        }
+    }
+
+    @Test
+    void matchesPrimitives() {
+        assertTrue(Literal.of("2").matches(2L));
+        assertFalse(Literal.of("02").matches(2L));
+        assertTrue(Literal.of("2.0").matches(2.0));
+        assertFalse(Literal.of("2").matches(2.0));
+        assertTrue(Literal.of("0.1").matches(0.1f));
+        assertFalse(Literal.of("0.1").matches((double) 0.1f));
+        assertTrue(Literal.of("true").matches(true));
+        assertFalse(Literal.of("true").matches(false));
+        assertTrue(Literal.of("x").matches('x'));
+        assertFalse(Literal.of("xy").matches('x'));
+    }
+}
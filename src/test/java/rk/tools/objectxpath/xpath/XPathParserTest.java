@@ -0,0 +1,128 @@
+package rk.tools.objectxpath.xpath;
+
+import org.junit.jupiter.api.Test;
+import rk.tools.objectxpath.exception.InvalidXPathExpressionError;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static rk.tools.objectxpath.xpath.NodeRelationship.CHILD;
+import static rk.tools.objectxpath.xpath.NodeRelationship.DESCENDANT;
+import static rk.tools.objectxpath.xpath.XPathNodeType.*;
+
+class XPathParserTest {
+
+    List<XPathNode> nodes;
+
+    @Test
+    void parse() {
+        nodes = XPathParser.parse("/");
+        assertEquals(1, nodes.size());
+        assertEquals(ROOT_NODE, nodes.get(0).type);
+
+        nodes = XPathParser.parse("/gears/gear[2]//characteristics/../*[1]/@details");
+        assertEquals(6, nodes.size());
+        checkNode(nodes.get(0), SIMPLE_NODE, CHILD, "gears", 0, 6);
+        checkNode(nodes.get(1), NODE_WITH_INDEX, CHILD, "gear", 6, 14);
+        assertEquals(2, ((NodeWithIndex) nodes.get(1)).index);
+        checkNode(nodes.get(2), SIMPLE_NODE, DESCENDANT, "characteristics", 14, 31);
+        checkNode(nodes.get(3), PARENT_NODE, CHILD, "..", 31, 34);
+        checkNode(nodes.get(4), ANY_NODE_WITH_INDEX, CHILD, "*", 34, 39);
+        checkNode(nodes.get(5), NODE_ATTRIBUTE, CHILD, "details", 39, 48);
+
+        nodes = XPathParser.parse("//*");
+        checkNode(nodes.get(0), ANY_NODE, DESCENDANT, "*", 0, 3);
+    }
+
+    @Test
+    void parseAttributePredicates() {
+        nodes = XPathParser.parse("/gears/gear[@id='111']/characteristics/characteristic[@id=\"22\"]");
+        assertEquals(4, nodes.size());
+        checkAttribute(nodes.get(1), NODE_WITH_ATTRIBUTE, "gear", "id", "111");
+        checkAttribute(nodes.get(3), NODE_WITH_ATTRIBUTE, "characteristic", "id", "22");
+
+        nodes = XPathParser.parse("//*[ @details = 'sn:22' ]");
+        checkAttribute(nodes.get(0), ANY_NODE_WITH_ATTRIBUTE, "*", "details", "sn:22");
+
+        nodes = XPathParser.parse("/a[@b='x]y']");
+        checkAttribute(nodes.get(0), NODE_WITH_ATTRIBUTE, "a", "b", "x]y");
+    }
+
+    @Test
+    void parsePredicateExpressions() {
+        nodes = XPathParser.parse("/gears/gear[@id > 111 and position() != last()]//*[not(@details) or @id<='22']");
+        assertEquals(3, nodes.size());
+        checkPredicate(nodes.get(1), NODE_WITH_PREDICATE, "gear", "(@id > 111 and position() != last())");
+        checkPredicate(nodes.get(2), ANY_NODE_WITH_PREDICATE, "*", "(not(@details) or @id <= '22')");
+        assertTrue(((NodeWithPredicate) nodes.get(1)).predicate.isPositional());
+        assertTrue(((NodeWithPredicate) nodes.get(1)).predicate.usesLast());
+        assertFalse(((NodeWithPredicate) nodes.get(2)).predicate.isPositional());
+
+        nodes = XPathParser.parse("/a[ last() ]/b[@x]/c[(@x = 1 or @y) and not(position() >= 2.5)]/d[@x != \"it's\"]");
+        checkPredicate(nodes.get(0), NODE_WITH_PREDICATE, "a", "position() = last()");
+        checkPredicate(nodes.get(1), NODE_WITH_PREDICATE, "b", "@x");
+        checkPredicate(nodes.get(2), NODE_WITH_PREDICATE, "c", "((@x = 1 or @y) and not(position() >= 2.5))");
+        checkPredicate(nodes.get(3), NODE_WITH_PREDICATE, "d", "@x != \"it's\"");
+
+        nodes = XPathParser.parse("/a[@order=-1]/b[@b = 'x']");
+        checkPredicate(nodes.get(0), NODE_WITH_PREDICATE, "a", "@order = -1");
+        assertEquals(-1.0, ((PredicateExpression.Comparison) ((NodeWithPredicate) nodes.get(0)).predicate).right.number);
+        checkAttribute(nodes.get(1), NODE_WITH_ATTRIBUTE, "b", "b", "x");
+        nodes = XPathParser.parse("/a/item[. > 1 and .='x']");
+        checkPredicate(nodes.get(1), NODE_WITH_PREDICATE, "item", "(. > 1 and . = 'x')");
+        assertEquals(XPathParser.parse("/a[@x<1 or @y]"), XPathParser.parse("/a[ @x < 1  or  @y ]"));
+        assertNotEquals(XPathParser.parse("/a[@x<1]"), XPathParser.parse("/a[@x<=1]"));
+    }
+
+    @Test
+    void parseNegative() {
+        assertThrows(NullPointerException.class, () -> XPathParser.parse(null));
+        checkInvalid("");
+        checkInvalid("gears");
+        checkInvalid("/engine/");
+        checkInvalid("///");
+        checkInvalid("/[]");
+        checkInvalid("/gears[]");
+        checkInvalid("/gears[@id=]");
+        checkInvalid("/gears[@id=1.]");
+        checkInvalid("/gears[@id < 1 and]");
+        checkInvalid("/gears[not @id]");
+        checkInvalid("/gears[(@id]");
+        checkInvalid("/gears[1 or @id]");
+        checkInvalid("/gears['a']");
+        checkInvalid("/gears[position()]");
+        checkInvalid("/gears[@id => 1]");
+        checkInvalid("/gears[last(1)]");
+        checkInvalid("/gears[-1]");
+        checkInvalid("/gears[@id='111'");
+        checkInvalid("/gears[99999999999]");
+        checkInvalid("/.");
+        checkInvalid("/@");
+    }
+
+    void checkNode(XPathNode node, XPathNodeType type, NodeRelationship relationship, String name,
+                   int startIndex, int endIndex) {
+        assertEquals(type, node.type);
+        assertEquals(relationship, node.relationship);
+        assertEquals(name, node.name);
+        assertEquals(startIndex, node.startIndex);
+        assertEquals(endIndex, node.endIndex);
+    }
+
+    void checkAttribute(XPathNode node, XPathNodeType type, String name, String attrName, String attrValue) {
+        assertEquals(type, node.type);
+        assertEquals(name, node.name);
+        assertEquals(attrName, ((NodeWithAttribute) node).attrName);
+        assertEquals(attrValue, ((NodeWithAttribute) node).attrValue);
+    }
+
+    void checkPredicate(XPathNode node, XPathNodeType type, String name, String predicate) {
+        assertEquals(type, node.type);
+        assertEquals(name, node.name);
+        assertEquals(predicate, ((NodeWithPredicate) node).predicate.toString());
+    }
+
+    void checkInvalid(String xPath) {
+        assertThrows(InvalidXPathExpressionError.class, () -> XPathParser.parse(xPath), xPath);
+    }
+}
@@ -0,0 +1,174 @@
+package rk.tools.objectxpath;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Records events of Java 11 classes (compiled by {@code java11} profile into {@code META-INF/versions/11})
+ * loaded from a multi-release jar, the same way they're loaded by applications.
+ */
+class FlightRecorderEventsTest {
+    private static Path jar;
+    private static URLClassLoader loader;
+
+    @BeforeAll
+    static void loadMultiReleaseJar() throws Exception {
+        Path classes = Paths.get(OXPy.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        jar = Files.createTempFile("object-xpath", ".jar");
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MULTI_RELEASE, "true");
+        try (OutputStream out = Files.newOutputStream(jar);
+             JarOutputStream jarOut = new JarOutputStream(out, manifest);
+             Stream<Path> files = Files.walk(classes)) {
+            for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                jarOut.putNextEntry(new JarEntry(classes.relativize(file).toString().replace('\\', '/')));
+                Files.copy(file, jarOut);
+                jarOut.closeEntry();
+            }
+        }
+        loader = new LibraryClassLoader(jar.toUri().toURL(), FlightRecorderEventsTest.class.getClassLoader());
+    }
+
+    @AfterAll
+    static void deleteJar() throws IOException {
+        loader.close();
+        Files.delete(jar);
+    }
+
+    @Test
+    void eventsAboveThreshold() throws Exception {
+        //Java 11 event classes are not present in Java 8 classes
+        assertEquals(loader, loader.loadClass("rk.tools.objectxpath.QueryEvaluationEvent").getClassLoader());
+        Object oxpy = loader.loadClass("rk.tools.objectxpath.OXPy").getConstructor().newInstance();
+        Method process = oxpy.getClass().getMethod("process", String.class, Object.class);
+        Method index = oxpy.getClass().getMethod("index", Object.class);
+
+        Map<String, Object> fast = new HashMap<>();
+        fast.put("record", 1);
+        //classes are loaded and initialized before recording, so evaluations of small map are fast
+        process.invoke(oxpy, "//record", fast);
+        index.invoke(oxpy, fast);
+        List<RecordedEvent> events = record(() -> {
+            process.invoke(oxpy, "//record", fast);
+            index.invoke(oxpy, fast);
+            process.invoke(oxpy, "//record", new SlowMap());
+            index.invoke(oxpy, new SlowMap());
+        });
+
+        //default thresholds are 20 ms, so only evaluations of slow map are recorded
+        List<RecordedEvent> evaluations = named(events, "oxpy.QueryEvaluation");
+        assertEquals(1, evaluations.size());
+        RecordedEvent evaluation = evaluations.get(0);
+        assertTrue(evaluation.getDuration().toMillis() >= 20);
+        assertEquals("//record", evaluation.getString("query"));
+        assertEquals(SlowMap.class.getName(), evaluation.getClass("rootClass").getName());
+        assertEquals(1, evaluation.getLong("results"));
+        assertTrue(evaluation.getLong("nodes") > 1);
+
+        List<RecordedEvent> treeBuilds = named(events, "oxpy.TreeBuild");
+        assertEquals(1, treeBuilds.size());
+        assertEquals(SlowMap.class.getName(), treeBuilds.get(0).getClass("rootClass").getName());
+        assertTrue(treeBuilds.get(0).getLong("nodes") > 0);
+    }
+
+    private static List<RecordedEvent> record(ThrowingRunnable action) throws Exception {
+        Path file = Files.createTempFile("object-xpath", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("oxpy.QueryEvaluation");
+            recording.enable("oxpy.TreeBuild");
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> named = new ArrayList<>();
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                named.add(event);
+            }
+        }
+        return named;
+    }
+
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+
+    /**
+     * Map which takes longer than event thresholds to iterate over.
+     */
+    private static class SlowMap extends AbstractMap<String, Object> {
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            try {
+                Thread.sleep(30);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Map<String, Object> entries = new HashMap<>();
+            entries.put("record", 1);
+            return entries.entrySet();
+        }
+    }
+
+    /**
+     * Loads classes of the library from the jar instead of the parent class loader.
+     */
+    private static class LibraryClassLoader extends URLClassLoader {
+        LibraryClassLoader(URL jar, ClassLoader parent) {
+            super(new URL[]{jar}, parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith("rk.tools.objectxpath.")) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null) {
+                    loaded = findClass(name);
+                }
+                if (resolve) {
+                    resolveClass(loaded);
+                }
+                return loaded;
+            }
+        }
+    }
+}